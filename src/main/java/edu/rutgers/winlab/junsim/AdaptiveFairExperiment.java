@@ -22,17 +22,12 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -123,15 +118,32 @@ public class AdaptiveFairExperiment implements Experiment {
         .getLogger(SolutionCheckTask.class);
 
     /**
-     * Set of points this task should check.
+     * Points this task should check, shared with the other tasks.
      */
-    Collection<Point2D> solutionPoints;
+    PointBatches solutionPoints;
 
-    Collection<Transmitter> txers;
     /**
-     * Set of capture disks to check for intersections
+     * Index of the best point this task found, for breaking ties between
+     * tasks.
      */
-    Collection<CaptureDisk> disks;
+    int maxIndex = -1;
+
+    /**
+     * Scores points from the disks of the transmitters, unless {@code scorer}
+     * is set.
+     */
+    FairnessScorer fairness;
+    /**
+     * Set of capture disks to check for intersections, or {@code null} if the
+     * disks were not generated.
+     */
+    CaptureDiskTable disks;
+
+    /**
+     * Scores points from the transmitter positions instead, if not
+     * {@code null}. Required if there are no disks.
+     */
+    PairFreeScorer scorer;
 
     /**
      * Reference to the bins for points.
@@ -151,51 +163,68 @@ public class AdaptiveFairExperiment implements Experiment {
 
     @Override
     public Receiver call() {
-      Point2D maxPoint = null;
-      Collection<CaptureDisk> maxPointDisks = null;
       float maxScore = 0;
-      final int totalDisks = this.disks.size();
+      final int totalDisks = PairFreeScorer.remaining(this.disks,
+          this.scorer);
       log.info(String.format(
           "Computing %,d points for %,d disks. Desired bin: %d.",
           this.solutionPoints.size(), totalDisks, desiredBin));
+      final Transmitter[] captured = this.scorer == null ? null
+          : new Transmitter[this.scorer.size()];
+      final int[] counts = new int[this.scorer == null ? this.fairness.size()
+          : this.scorer.size()];
+      final int[] improved = this.scorer == null ? new int[this.fairness
+          .size()] : null;
 
       /*
        * Determine the number of disks that intersect this point. If the number
        * is the new max, then save it. If there are no intersections, remove it.
        */
-      points: for (final Iterator<Point2D> iter = this.solutionPoints
-          .iterator(); iter.hasNext();) {
-        final Point2D p = iter.next();
-
-        // for (final CaptureDisk d : this.disks) {
-        Collection<CaptureDisk> pDisk = new HashSet<CaptureDisk>();
-        float score = AdaptiveFairExperiment.calculateScore(p, this.txers, pDisk,
-            this.cutoffContention);
-
-        if (score == 0) {
-          iter.remove();
-          continue;
-        }
-        // }
-        // int size = pDisk.size();
+      final int[] batch = new int[2];
+      while (this.solutionPoints.next(batch)) {
+        for (int i = batch[0]; i < batch[1]; ++i) {
+          final Point2D p = this.solutionPoints.get(i);
+
+          // for (final CaptureDisk d : this.disks) {
+          float score = this.scorer != null ? AdaptiveFairExperiment
+              .calculateScore(p, this.scorer, this.cutoffContention, captured,
+                  counts) : this.fairness.score(p, this.cutoffContention,
+              counts, improved);
+
+          if (score == 0) {
+            this.solutionPoints.discard(i);
+            continue;
+          }
+          // }
+          // int size = pDisk.size();
 
-        if (score > 0) {
-          int bindex = this.binner.put(p, (int)score);
+          if (score > 0) {
+            this.solutionPoints.setScore(i, (int) score);
+            int bindex = this.binner.getBindex((int) score);
 
-          // Add to bin
-          if (score > maxScore && bindex >= this.desiredBin) {
-            maxScore = score;
-            maxPoint = p;
-            maxPointDisks = pDisk;
+            // Add to bin
+            if (score > maxScore && bindex >= this.desiredBin) {
+              maxScore = score;
+              this.maxIndex = i;
+            }
           }
-        }
 
+        }
       }
       final Receiver maxReceiver = new Receiver();
       // Remove the highest point and its solution disks
-      if (maxPoint != null) {
+      if (this.maxIndex >= 0) {
+        final Point2D maxPoint = this.solutionPoints.get(this.maxIndex);
         maxReceiver.setLocation(maxPoint);
-        maxReceiver.coveringDisks = maxPointDisks;
+        // Only the winner's covering disks are materialized
+        maxReceiver.coveringDisks = new HashSet<CaptureDisk>();
+        if (this.scorer != null) {
+          this.scorer.collectCaptured(maxPoint.getX(), maxPoint.getY(),
+              this.cutoffContention, maxReceiver.coveringDisks);
+        } else {
+          this.fairness.collect(maxPoint, this.cutoffContention,
+              maxReceiver.coveringDisks);
+        }
         maxReceiver.score = maxScore;
       }
       // No solutions found?
@@ -210,16 +239,23 @@ public class AdaptiveFairExperiment implements Experiment {
   public Boolean perform() {
     // final ExperimentRender display = new AnimatedRenderer(Main.gfxConfig);
 
-    final Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
-    // Compute all possible capture disks
-    for (final Transmitter t1 : this.config.transmitters) {
-      for (final Transmitter t2 : this.config.transmitters) {
-        final CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
-        if (someDisk != null) {
-          disks.add(someDisk);
-        }
-      }
+    final PairFreeScorer scorer = Main.config.pairFreeScoring ? new PairFreeScorer(
+        this.config.transmitters) : null;
+
+    // Compute all possible capture disks, unless only the transmitter pairs
+    // are scored and nothing is drawn
+    final CaptureDiskTable disks = scorer == null
+        || Main.gfxConfig.generateImages ? new CaptureDiskTable(
+        Main.generateCaptureDisks(this.config.transmitters, this.workers))
+        : null;
+    if (disks == null) {
+      scorer.addUnstoredDisks();
+    } else if (scorer != null) {
+      // The scorer decides coverage, the table follows it for drawing
+      scorer.useStoredDisks();
     }
+    final FairnessScorer fairness = scorer == null ? new FairnessScorer(
+        this.config.transmitters) : null;
 
     if (Main.gfxConfig.generateImages) {
       this.render.setTransmitters(this.config.transmitters);
@@ -230,8 +266,8 @@ public class AdaptiveFairExperiment implements Experiment {
       this.render.clear();
 
     }
-    log.info("[" + this.config.trialNumber + "] Generated " + disks.size()
-        + " disks.");
+    log.info("[" + this.config.trialNumber + "] Generated "
+        + PairFreeScorer.remaining(disks, scorer) + " disks.");
 
     float minX = 0;
     float maxX = Main.config.universeWidth;
@@ -241,7 +277,7 @@ public class AdaptiveFairExperiment implements Experiment {
     float random = Main.config.isRandomized() ? ((Main.config.universeWidth + Main.config.universeHeight) / 2) * 0.01f
         : 0f;
 
-    final int totalCaptureDisks = disks.size();
+    final int totalCaptureDisks = PairFreeScorer.remaining(disks, scorer);
     // final int startingSolutionPoints = startingPoints.size();
     int m = 0;
 
@@ -249,13 +285,10 @@ public class AdaptiveFairExperiment implements Experiment {
     // final Collection<Receiver> receivers = new LinkedList<Receiver>();
     // Keep track of which collisions are captured so that packet loss
     // probabilities can be quickly calculated
-    final ConcurrentHashMap<Transmitter, HashSet<Transmitter>> capturedCollisions = new ConcurrentHashMap<Transmitter, HashSet<Transmitter>>();
-    // Add an empty set for each transmitter
-    for (final Transmitter txer : this.config.transmitters) {
-      capturedCollisions.put(txer, new HashSet<Transmitter>());
-    }
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
 
-    this.binner = new Binner(this.numBins, 1, disks.size() / 3);
+    this.binner = new Binner(this.numBins, 1, totalCaptureDisks / 3);
 
     int highestBindex = 0;
     // Evaluate any receiver positions we've been given
@@ -272,10 +305,10 @@ public class AdaptiveFairExperiment implements Experiment {
       // ////////////////////////////////////////////////////////////////////
 
       SolutionCheckTask task = new SolutionCheckTask();
-      task.solutionPoints = new LinkedList<Point2D>();
-      task.solutionPoints.add(rxer);
+      task.solutionPoints = new PointBatches(Collections.singleton(rxer), 1);
       task.disks = disks;
-      task.txers = this.config.transmitters;
+      task.fairness = fairness;
+      task.scorer = scorer;
       task.cutoffContention = 0;
       task.binner = this.binner;
       task.desiredBin = 0;
@@ -298,38 +331,27 @@ public class AdaptiveFairExperiment implements Experiment {
       } catch (final InterruptedException e) {
         e.printStackTrace();
       }
+      this.binner.putScored(task.solutionPoints);
 
       log.info("Receiver score: {}", rxer.coveringDisks.size());
 
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : rxer.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(rxer.coveringDisks);
+      if (disks != null) {
+        disks.removeAll(rxer.coveringDisks);
       }
-      disks.removeAll(rxer.coveringDisks);
-
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
+      if (scorer != null) {
+        scorer.removeAll(rxer.coveringDisks);
       }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
 
-      final float capturedDisks = totalCaptureDisks - disks.size();
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
+
+      final float capturedDisks = totalCaptureDisks
+          - PairFreeScorer.remaining(disks, scorer);
       final float captureRatio = (capturedDisks / totalCaptureDisks);
       // Debugging stuff
       if (Main.gfxConfig.generateImages) {
@@ -361,7 +383,7 @@ public class AdaptiveFairExperiment implements Experiment {
 
     this.binner.set(startingPoints, 1);
 
-    receiverLoop: while (m < this.config.numReceivers && !disks.isEmpty()) {
+    receiverLoop: while (m < this.config.numReceivers && PairFreeScorer.remaining(disks, scorer) > 0) {
 
       int maxContention = 0;
       int minContention = this.config.transmitters.size();
@@ -386,8 +408,8 @@ public class AdaptiveFairExperiment implements Experiment {
           + "] Calculating position for receiver " + (m + 1) + ".");
       Receiver maxReceiver = null;
       float previousMaxScore = 0;
-      HashSet<Point2D> alreadyChecked = new HashSet<Point2D>();
-      HashSet<Point2D> maxChecked = new HashSet<Point2D>();
+      CandidateStore alreadyChecked = new CandidateStore();
+      CandidateStore maxChecked = new CandidateStore();
       recursiveLoop: do {
         this.binner.printBins();
 
@@ -395,72 +417,59 @@ public class AdaptiveFairExperiment implements Experiment {
           previousMaxScore = maxReceiver.score;
         }
         log.info("Using bin {}", this.binner.getMaxBindex());
-        Set<Point2D> possiblePoints = this.binner.getMaxBin();
+        CandidateStore possiblePoints = this.binner.getMaxBin();
         if (possiblePoints == null) {
           log.info("No more points available in the bins.");
           break;
         }
-        Set<Point2D> thePoints = new HashSet<Point2D>();
-        for (Iterator<Point2D> iter = possiblePoints.iterator(); iter.hasNext();) {
-          Point2D pnt = iter.next();
-          iter.remove();
-          if (alreadyChecked.contains(pnt)) {
-            maxChecked.add(pnt);
+        CandidateStore thePoints = new CandidateStore();
+        for (int i = 0; i < possiblePoints.capacity(); ++i) {
+          if (!possiblePoints.isLive(i)) {
+            continue;
+          }
+          final float x = possiblePoints.getX(i);
+          final float y = possiblePoints.getY(i);
+          if (alreadyChecked.indexOf(x, y) >= 0) {
+            maxChecked.add(x, y);
           } else {
-            thePoints.add(pnt);
+            thePoints.add(x, y);
           }
-
         }
+        possiblePoints.clear();
 
         final int numTasks = Main.config.numThreads;
         final int numPoints = thePoints.size();
-        final int pointsPerTask = (numPoints / numTasks) + 1;
-        final long numComparisons = disks.size() * (long) numPoints;
-
-        final Collection<SolutionCheckTask> tasks = new LinkedList<AdaptiveFairExperiment.SolutionCheckTask>();
-        final Iterator<Point2D> pointIter = thePoints.iterator();
-        SolutionCheckTask task = new SolutionCheckTask();
-        task.solutionPoints = new LinkedList<Point2D>();
-        task.disks = disks;
-        task.txers = this.config.transmitters;
-        task.desiredBin = highestBindex;
-        task.cutoffContention = cutoffContention;
-        task.binner = this.binner;
-        // task.parent = this;
-        tasks.add(task);
-        for (int i = 0; pointIter.hasNext(); ++i) {
-          Point2D pnt = pointIter.next();
-          task.solutionPoints.add(pnt);
-          alreadyChecked.add(pnt);
-          pointIter.remove();
-          if (i == pointsPerTask) {
-            i = 0;
-            task = new SolutionCheckTask();
-            task.solutionPoints = new LinkedList<Point2D>();
-            task.disks = disks;
-            task.txers = this.config.transmitters;
-            task.binner = this.binner;
-            task.desiredBin = highestBindex;
-            task.cutoffContention = cutoffContention;
-            // task.parent = this;
-            tasks.add(task);
-          }
-        }
-        int sumTasks = 0;
-        for (final SolutionCheckTask t : tasks) {
-          log.info(String.format("Task (%,d)", t.solutionPoints.size()));
-          sumTasks += t.solutionPoints.size();
+        final long numComparisons = PairFreeScorer.remaining(disks, scorer)
+            * (long) numPoints;
+
+        final PointBatches batches = new PointBatches(thePoints, numTasks);
+        alreadyChecked.addAll(thePoints);
+        thePoints.clear();
+        final List<SolutionCheckTask> tasks = new ArrayList<AdaptiveFairExperiment.SolutionCheckTask>(
+            numTasks);
+        for (int i = 0; i < numTasks; ++i) {
+          final SolutionCheckTask task = new SolutionCheckTask();
+          task.solutionPoints = batches;
+          task.disks = disks;
+          task.fairness = fairness;
+          task.scorer = scorer;
+          task.desiredBin = highestBindex;
+          task.cutoffContention = cutoffContention;
+          task.binner = this.binner;
+          tasks.add(task);
         }
 
-        log.info(String
-            .format("Divided %,d/%,d points.\n", sumTasks, numPoints));
+        log.info(String.format("Sharing %,d points between %,d tasks.\n",
+            numPoints, numTasks));
         final long start = System.currentTimeMillis();
 
         try {
           final List<Future<Receiver>> solutions = this.workers
               .invokeAll(tasks);
 
-          for (final Future<Receiver> future : solutions) {
+          int maxIndex = -1;
+          for (int t = 0; t < solutions.size(); ++t) {
+            final Future<Receiver> future = solutions.get(t);
             if (future.isCancelled() || !future.isDone()) {
               log.error("One of the tasks was cancelled! Double-check the code!");
               return Boolean.FALSE;
@@ -471,9 +480,13 @@ public class AdaptiveFairExperiment implements Experiment {
                 log.warn("No receiver returned.");
                 continue;
               }
-              if (maxReceiver == null || r.score > maxReceiver.score) {
+              // Equal scores go to the earliest point, as in a single pass
+              final int rIndex = tasks.get(t).maxIndex;
+              if (maxReceiver == null || r.score > maxReceiver.score
+                  || (r.score == maxReceiver.score && rIndex < maxIndex)) {
                 highestBindex = this.binner.getBindex((int)r.score);
                 maxReceiver = r;
+                maxIndex = rIndex;
               }
             } catch (final ExecutionException e) {
               // TODO Auto-generated catch block
@@ -484,6 +497,7 @@ public class AdaptiveFairExperiment implements Experiment {
         } catch (final InterruptedException e) {
           e.printStackTrace();
         }
+        this.binner.putScored(batches);
         final long duration = System.currentTimeMillis() - start;
         log.info(String.format("Computed %,d comparisons in %,dms.\n",
             numComparisons, duration));
@@ -541,35 +555,23 @@ public class AdaptiveFairExperiment implements Experiment {
       // Add the newest receiver and remove newly covered points and disks
       this.config.receivers.add(maxReceiver);
 
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : maxReceiver.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(maxReceiver.coveringDisks);
+      if (disks != null) {
+        disks.removeAll(maxReceiver.coveringDisks);
       }
-      disks.removeAll(maxReceiver.coveringDisks);
-
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
+      if (scorer != null) {
+        scorer.removeAll(maxReceiver.coveringDisks);
       }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
 
-      final float capturedDisks = totalCaptureDisks - disks.size();
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
+
+      final float capturedDisks = totalCaptureDisks
+          - PairFreeScorer.remaining(disks, scorer);
       final float captureRatio = (capturedDisks / totalCaptureDisks);
       // Debugging stuff
       if (Main.gfxConfig.generateImages) {
@@ -594,7 +596,9 @@ public class AdaptiveFairExperiment implements Experiment {
     } // End for each receiver
 
     // }
-    disks.clear();
+    if (disks != null) {
+      disks.clear();
+    }
     startingPoints.clear();
     this.binner.clear();
     this.config.transmitters.clear();
@@ -602,30 +606,18 @@ public class AdaptiveFairExperiment implements Experiment {
     return Boolean.TRUE;
   }
 
-  static boolean checkPointInDisk(final Point2D p, final CaptureDisk d) {
-    final double dist1 = Math.sqrt(Math.pow(p.getX() - d.t1.getX(), 2)
-        + Math.pow(p.getY() - d.t1.getY(), 2));
-    final double dist2 = Math.sqrt(Math.pow(p.getX() - d.t2.getX(), 2)
-        + Math.pow(p.getY() - d.t2.getY(), 2));
-    // This point is too far away from the transmitters for this disk
-    if (dist1 > Main.config.maxRangeMeters
-        && dist2 > Main.config.maxRangeMeters) {
-      return false;
-    }
-    return d.disk.contains(p);
-
-  }
-
-  private static Collection<Point2D> generateSolutionPoints(final float minX,
+  private static CandidateStore generateSolutionPoints(final float minX,
       final float maxX, final float minY, final float maxY, final float random,
       final Collection<Transmitter> transmitters) {
+    final RangeMask inRange = new RangeMask(transmitters,
+        Main.config.maxRangeMeters);
 
     log.info(String
         .format(
             "Generating [(%,.2f, %,.2f)x(%,.2f, %,.2f)] dense: %,.1f, random: %,.2f",
             minX, maxX, minY, maxY, Main.config.getGridDensity(), random));
 
-    final Collection<Point2D> solutionPoints = new HashSet<Point2D>();
+    final CandidateStore solutionPoints = new CandidateStore();
     float density = Main.config.getGridDensity();
     float xStep = (maxX - minX) / density;
     float yStep = (maxY - minY) / density;
@@ -646,9 +638,8 @@ public class AdaptiveFairExperiment implements Experiment {
         if (y < 0 || y > Main.config.universeHeight) {
           continue;
         }
-        Point2D.Float pnt = new Point2D.Float(x, y);
-        if (AdaptiveFairExperiment.checkPointInRange(pnt, transmitters)) {
-          solutionPoints.add(pnt);
+        if (inRange.contains(x, y)) {
+          solutionPoints.add(x, y);
         }
       }
 
@@ -658,65 +649,35 @@ public class AdaptiveFairExperiment implements Experiment {
   }
 
   /**
-   * Returns true if a point is within the transmit radius of at least one
-   * transmitter, else false.
+   * Computes the same score as {@link FairnessScorer#score} from the
+   * transmitter positions, without testing any disks.
    * 
-   * @param p
-   *          the point to test.
-   * @return {@code true} if the point is within the transmit radius of at
-   *         leaset one transmitter.
+   * @param pnt
+   *          the point to score.
+   * @param scorer
+   *          the scorer for the transmitters.
+   * @param minContention
+   *          only transmitters with a higher contention are counted.
+   * @param captured
+   *          buffer for the captured transmitters, at least
+   *          {@code scorer.size()} long.
+   * @param counts
+   *          buffer for the disk counts, at least {@code scorer.size()} long.
+   * @return the average contention improvement of the improved transmitters.
    */
-  private static boolean checkPointInRange(final Point2D p,
-      final Collection<Transmitter> transmitters) {
-    for (final Transmitter t : transmitters) {
-      final double d = Math.sqrt(Math.pow(p.getX() - t.getX(), 2)
-          + Math.pow(p.getY() - t.getY(), 2));
-      if (d < Main.config.maxRangeMeters) {
-        return true;
-      }
-    }
-    return false;
-  }
-
-  static float calculateScore(Point2D pnt,
-      final Collection<Transmitter> transmitters,
-      final Collection<CaptureDisk> returnedDisks, int minContention) {
-
-    // NASTY hack here. Duplicating all of the state!
-    Collection<Transmitter> startingTxers = new LinkedList<Transmitter>();
-    for (Transmitter tx : transmitters) {
-      if (tx.getContention() > minContention) {
-        startingTxers.add(tx);
-      }
-    }
-
-    // TODO: Make this more efficient. Have points track their disks?
-
-    Object[] txAndDisk = Main.clone(startingTxers);
-    Map<CaptureDisk, CaptureDisk> cloneToOrig = (Map<CaptureDisk, CaptureDisk>) txAndDisk[1];
-    Collection<Transmitter> txers = (Collection<Transmitter>) txAndDisk[0];
-    Map<Transmitter, Integer> origScores = new HashMap<Transmitter, Integer>();
-    for (Transmitter t : txers) {
-      origScores.put(t, t.getContention());
-    }
-
-    HashSet<Transmitter> uniqueTxers = new HashSet<Transmitter>();
-    for (final CaptureDisk d : cloneToOrig.keySet()) {
-      if (checkPointInDisk(pnt, d)) {
-        d.t1.addCoveredDisk(d);
-        returnedDisks.add(cloneToOrig.get(d));
-      }
-    }
+  static float calculateScore(final Point2D pnt, final PairFreeScorer scorer,
+      final int minContention, final Transmitter[] captured, final int[] counts) {
+    final int numCaptured = scorer.countByCaptured(pnt.getX(), pnt.getY(),
+        captured, counts);
+    int improved = 0;
     float score = 0;
-    for (Transmitter tx : txers) {
-      if (tx.getContention() < origScores.get(tx)) {
-        uniqueTxers.add(tx);
-        score += origScores.get(tx) - tx.getContention();
+    for (int i = 0; i < numCaptured; ++i) {
+      if (captured[i].getContention() > minContention) {
+        ++improved;
+        score += counts[i];
       }
     }
-
-    // return uniqueTxers.size();
-    return uniqueTxers.isEmpty() ? 0 : score/uniqueTxers.size();
+    return improved == 0 ? 0 : score / improved;
   }
 
 }
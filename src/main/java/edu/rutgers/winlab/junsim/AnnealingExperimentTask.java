@@ -18,138 +18,304 @@
  */
 package edu.rutgers.winlab.junsim;
 
-import java.awt.Graphics;
-import java.awt.geom.Point2D;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Formatter;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.logging.SimpleFormatter;
 
-import javax.imageio.ImageIO;
-import javax.swing.JFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
+ * Places all of the receivers together by simulated annealing, rather than one
+ * at a time.
+ * <p>
+ * The candidate positions are the centers and the intersection points of the
+ * capture disks, and two candidates are neighbors if they lie on the same
+ * disk. A move shifts one receiver to a neighbor of its position. The energy
+ * of a placement is the mean contention of the transmitters, which only
+ * depends on the number of disks covered by at least one receiver. Each chain
+ * keeps its receivers' coverage in a {@link CoverageState}, so a move is
+ * applied (and rolled back if it is rejected) using the disks covering the
+ * old and the new position alone.
+ * </p>
+ * <p>
+ * Several chains are run in parallel on the worker pool, each from its own
+ * random placement, and the best placement found by any of them is kept.
+ * </p>
+ * 
  * @author Bernhard Firner
  * 
  */
-public class AnnealingExperimentTask {
+public class AnnealingExperimentTask implements Experiment {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(AnnealingExperimentTask.class);
+
+  /**
+   * Starting temperature, measured in capture disks: a move that uncovers this
+   * many disks is first accepted with probability 1/e.
+   */
+  private static final double START_TEMPERATURE = 2.0;
+
+  /**
+   * Final temperature, measured in capture disks.
+   */
+  private static final double END_TEMPERATURE = 0.05;
 
+  /**
+   * Configuration for this task.
+   */
   final TaskConfig config;
+  /**
+   * Statistics to update.
+   */
   final ExperimentStats stats[];
+  /**
+   * Name of the directory in which to save images.
+   */
   String saveDirectory = null;
+  /**
+   * Pool of worker threads to utilize.
+   */
   private final ExecutorService workers;
-  
+
   private final FileRenderer render;
 
-  public AnnealingExperimentTask(final TaskConfig config, final ExperimentStats[] stats,
-      final ExecutorService workers) {
+  /**
+   * Creates a new experiment task with the specific configuration, global stats
+   * to update, and worker pool.
+   * 
+   * @param config
+   *          configuration to use.
+   * @param stats
+   *          statistics to update at the end
+   * @param workers
+   *          worker threadpool to utilize.
+   */
+  public AnnealingExperimentTask(final TaskConfig config,
+      final ExperimentStats[] stats, final ExecutorService workers) {
     super();
     this.workers = workers;
     this.config = config;
     this.stats = stats;
-    this.saveDirectory = String.format("s%d_t%d_x%d"
+    this.saveDirectory = Main.buildPath(String.format("s%d_t%d_x%d"
         + (Main.config.stripSolutionPoints ? "_S" : ""),
-        Main.config.randomSeed, this.config.numTransmitters,
-        this.config.trialNumber);
+        Long.valueOf(Main.config.randomSeed),
+        Integer.valueOf(this.config.numTransmitters),
+        Integer.valueOf(this.config.trialNumber)));
     this.render = new FileRenderer(Main.gfxConfig);
   }
 
-  private static final class SolutionCheckTask implements Callable<Receiver> {
-
-    Collection<Point2D> solutionPoints;
-    Collection<CaptureDisk> disks;
-    AnnealingExperimentTask parent;
-
-    
-    
-    public SolutionCheckTask() {
-      super();
-    }
+  /**
+   * The candidate receiver positions, and the disks they lie on.
+   */
+  private static final class Candidates {
+    /**
+     * Coordinates of each candidate.
+     */
+    final float[] x;
 
-    @Override
-    public Receiver call() {
-      System.out.println("Call is called!\n");
+    final float[] y;
 
-      Point2D maxPoint = null;
-      Collection<CaptureDisk> maxPointDisks = null;
-      int maxDisks = 0;
+    /**
+     * The disks each candidate lies on. A disk center only lies on its own
+     * disk, so both are the same.
+     */
+    final int[] first;
 
-      // For each solution point, map the set of capture disks that contain it
+    final int[] second;
 
-      for (Iterator<Point2D> iter = solutionPoints.iterator(); iter.hasNext();) {
-        Point2D p = iter.next();
-        Collection<CaptureDisk> pDisk = new HashSet<CaptureDisk>();
-        for (CaptureDisk d : disks) {
-          if (AnnealingExperimentTask.checkPointInDisk(p,d)) {
-            pDisk.add(d);
-          }
+    /**
+     * Candidates lying on each disk. Disk {@code d} occupies
+     * {@code [diskStart[d], diskStart[d + 1])}.
+     */
+    final int[] diskPoints;
+
+    final int[] diskStart;
+
+    Candidates(final float[] x, final float[] y, final int[] first,
+        final int[] second, final int numDisks) {
+      this.x = x;
+      this.y = y;
+      this.first = first;
+      this.second = second;
+      this.diskStart = new int[numDisks + 1];
+      for (int i = 0; i < x.length; ++i) {
+        ++this.diskStart[first[i] + 1];
+        if (second[i] != first[i]) {
+          ++this.diskStart[second[i] + 1];
         }
-        if (pDisk.size() > maxDisks) {
-          maxDisks = pDisk.size();
-          maxPoint = p;
-          maxPointDisks = pDisk;
+      }
+      for (int d = 1; d < this.diskStart.length; ++d) {
+        this.diskStart[d] += this.diskStart[d - 1];
+      }
+      this.diskPoints = new int[this.diskStart[numDisks]];
+      final int[] fill = new int[numDisks];
+      for (int i = 0; i < x.length; ++i) {
+        this.diskPoints[this.diskStart[first[i]] + fill[first[i]]++] = i;
+        if (second[i] != first[i]) {
+          this.diskPoints[this.diskStart[second[i]] + fill[second[i]]++] = i;
         }
-        // No intersections, so remove
-        else if (pDisk.size() == 0) {
-          iter.remove();
+      }
+    }
+
+    int size() {
+      return this.x.length;
+    }
+
+    /**
+     * Picks a random neighbor of a candidate: another random candidate on a
+     * random one of the disks it lies on. A candidate without any neighbors
+     * (such as a center alone on its disk) moves to any other candidate. There
+     * must be at least two candidates.
+     */
+    int neighbor(final int point, final Random rand) {
+      int others = this.diskStart[this.first[point] + 1]
+          - this.diskStart[this.first[point]] - 1;
+      if (this.second[point] != this.first[point]) {
+        others += this.diskStart[this.second[point] + 1]
+            - this.diskStart[this.second[point]] - 1;
+      }
+      int to = point;
+      while (to == point) {
+        if (others == 0) {
+          to = rand.nextInt(this.size());
+          continue;
         }
+        final int disk = rand.nextBoolean() ? this.first[point]
+            : this.second[point];
+        final int start = this.diskStart[disk];
+        to = this.diskPoints[start
+            + rand.nextInt(this.diskStart[disk + 1] - start)];
       }
+      return to;
+    }
+  }
 
-      Receiver maxReceiver = new Receiver();
-      // Remove the highest point and its solution disks
-      if (maxPoint != null) {
+  /**
+   * A single annealing chain.
+   */
+  private static final class Chain implements Callable<Chain> {
+    final Candidates candidates;
+
+    final DiskIndex index;
+
+    final int numReceivers;
+
+    final long iterations;
+
+    final Random rand;
+
+    /**
+     * The disks covered by the receivers.
+     */
+    final CoverageState coverage;
 
-        maxReceiver.setLocation(maxPoint);
-        maxReceiver.coveringDisks = maxPointDisks;
+    /**
+     * Candidate position of each receiver.
+     */
+    final int[] position;
+
+    /**
+     * Disks covering each receiver's position.
+     */
+    final int[][] covering;
+
+    /**
+     * Best placement found so far.
+     */
+    int[] bestPosition;
+
+    int bestCovered;
+
+    Chain(final Candidates candidates, final CaptureDiskTable table,
+        final DiskIndex index, final int numReceivers, final long iterations,
+        final long seed) {
+      this.candidates = candidates;
+      this.index = index;
+      this.numReceivers = numReceivers;
+      this.iterations = iterations;
+      this.rand = new Random(seed);
+      this.coverage = new CoverageState(table);
+      this.position = new int[numReceivers];
+      this.covering = new int[numReceivers][];
+    }
 
+    @Override
+    public Chain call() {
+      final int[] scratch = new int[this.index.size()];
+      for (int r = 0; r < this.numReceivers; ++r) {
+        this.position[r] = this.rand.nextInt(this.candidates.size());
+        final int n = this.index.collect(this.candidates.x[this.position[r]],
+            this.candidates.y[this.position[r]], scratch);
+        this.covering[r] = Arrays.copyOf(scratch, n);
+        for (final int d : this.covering[r]) {
+          this.coverage.cover(d);
+        }
       }
-      // No solutions found?
-      else {
-        return null;
+      this.coverage.commit();
+      this.bestPosition = this.position.clone();
+      this.bestCovered = this.coverage.getNumCovered();
+
+      // Geometric cooling from the start to the end temperature
+      final double cooling = Math.pow(END_TEMPERATURE / START_TEMPERATURE,
+          1.0 / Math.max(1, this.iterations));
+      double temperature = START_TEMPERATURE;
+      // Every move goes somewhere else, so each iteration is evaluated
+      final long iterations = this.candidates.size() > 1 ? this.iterations : 0;
+      for (long k = 0; k < iterations; ++k, temperature *= cooling) {
+        final int r = this.rand.nextInt(this.numReceivers);
+        final int to = this.candidates.neighbor(this.position[r], this.rand);
+        // Move the receiver, keeping track of the changes to undo them
+        final int mark = this.coverage.mark();
+        final int before = this.coverage.getNumCovered();
+        for (final int d : this.covering[r]) {
+          this.coverage.uncover(d);
+        }
+        final int n = this.index.collect(this.candidates.x[to],
+            this.candidates.y[to], scratch);
+        for (int i = 0; i < n; ++i) {
+          this.coverage.cover(scratch[i]);
+        }
+        final int delta = this.coverage.getNumCovered() - before;
+        if (delta >= 0 || this.rand.nextDouble() < Math.exp(delta / temperature)) {
+          this.coverage.commit();
+          this.position[r] = to;
+          this.covering[r] = Arrays.copyOf(scratch, n);
+          if (this.coverage.getNumCovered() > this.bestCovered) {
+            this.bestCovered = this.coverage.getNumCovered();
+            System.arraycopy(this.position, 0, this.bestPosition, 0,
+                this.numReceivers);
+          }
+        } else {
+          this.coverage.rollback(mark);
+        }
       }
-
-      return maxReceiver;
+      return this;
     }
   }
 
   public Boolean perform() {
-    TreeMap<Point2D, HashSet<Point2D>> adjacencies =
-      new TreeMap<Point2D, HashSet<Point2D>>(new PointComparator());
-
-    
 
     if (Main.gfxConfig.generateImages) {
-
       this.render.setTransmitters(this.config.transmitters);
       Main.saveImage(this.render, this.saveDirectory + File.separator + "0000");
       this.render.clear();
     }
 
-    Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
     // Compute all possible capture disks
-    for (Transmitter t1 : this.config.transmitters) {
-      for (Transmitter t2 : this.config.transmitters) {
-        CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
-        if (someDisk != null) {
-          disks.add(someDisk);
-        }
-      }
-    }
-    System.out.println("[" + this.config.trialNumber + "] Generated "
-        + disks.size() + " disks.");
+    final CaptureDiskTable disks = new CaptureDiskTable(Main
+        .generateCaptureDisks(this.config.transmitters, this.workers));
+    final DiskIndex index = new DiskIndex(disks);
+    log.info("[" + this.config.trialNumber + "] Generated " + disks.size()
+        + " disks.");
     if (Main.gfxConfig.generateImages) {
       this.render.setTransmitters(this.config.transmitters);
       this.render.setCaptureDisks(disks);
@@ -157,277 +323,153 @@ public class AnnealingExperimentTask {
       this.render.clear();
     }
 
-    Collection<Point2D> solutionPoints = AnnealingExperimentTask.generateSolutionPoints(
-        disks, this.config.transmitters, adjacencies);
-    // Adjacency list is now populated from possible points
-    // This occurs in the generateSolutionPoints function
-
-    System.out.printf("[%d] Generated %,d solution points.\n",this.config.trialNumber, solutionPoints.size());
-    if (Main.gfxConfig.generateImages) {
-      this.render.setTransmitters(this.config.transmitters);
-      this.render.setSolutionPoints(solutionPoints);
-      this.render.setCaptureDisks(disks);
-      Main.saveImage(this.render, this.saveDirectory + File.separator + "0020");
-      this.render.clear();
+    final Candidates candidates = AnnealingExperimentTask.generateCandidates(
+        disks, this.config.transmitters, this.workers);
+    log.info(String.format("[%d] Generated %,d solution points.",
+        Integer.valueOf(this.config.trialNumber),
+        Integer.valueOf(candidates.size())));
+    if (candidates.size() == 0 || this.config.numReceivers < 1) {
+      return Boolean.TRUE;
     }
 
-    //TODO FIXME HERE Use adjacency list to drive simulated annealing
-    // First pick K random starting points
-    // Follow simulated annealing algorithm. From wikipedia:
-    /*
-       s <- s0; e <- E(s)                            // Initial state, energy.
-       sbest <- s; ebest <- e                        // Initial "best" solution
-       k <- 0                                        // Energy evaluation count.
-       while k < kmax and e > emax                   // While time left & not good enough:
-         T <- temperature(k/kmax)                    // Temperature calculation.
-         snew <- neighbour(s)                        // Pick some neighbour.
-         enew <- E(snew)                             // Compute its energy.
-         if P(e, enew, T) > random() then            // Should we move to it?
-           s <- snew; e <- enew                      // Yes, change state.
-         if enew < ebest then                        // Is this a new best?
-           sbest <- snew; ebest <- enew              // Save 'new neighbour' to 'best found'.
-         k <- k + 1                                  // One more evaluation done
-       return sbest                                  // Return the best solution found.
-     */
-    //
-    // Select random set of receivers as the starting set for annealing
-    // TODO Vector instead of linked list?
-    Collection<Point2D> state = new LinkedList<Point2D>();
-    //TODO Use random points rather than just arbitrary ones in the map
-    int cur = 0;
-    int end = solutionPoints.size() / this.config.numReceivers;
-    for (Point2D p: solutionPoints) {
-      cur += 1;
-      if (cur % end == 0) {
-        state.add(p);
+    // Run the chains, each with its own stream of random numbers
+    final int numChains = Main.config.annealingChains > 0 ? Main.config.annealingChains
+        : Main.config.numThreads;
+    final List<Chain> chains = new ArrayList<Chain>(numChains);
+    for (int c = 0; c < numChains; ++c) {
+      chains.add(new Chain(candidates, disks, index,
+          this.config.numReceivers, Main.config.annealingIterations,
+          Main.config.randomSeed * 31 + this.config.trialNumber * 1009L + c));
+    }
+    final long start = System.currentTimeMillis();
+    Chain best = null;
+    try {
+      for (final Future<Chain> future : this.workers.invokeAll(chains)) {
+        final Chain chain = future.get();
+        // Equal placements go to the earliest chain
+        if (best == null || chain.bestCovered > best.bestCovered) {
+          best = chain;
+        }
       }
+    } catch (final InterruptedException e) {
+      e.printStackTrace();
+      return Boolean.FALSE;
+    } catch (final ExecutionException e) {
+      e.printStackTrace();
+      return Boolean.FALSE;
     }
-    // Initialize energy and best state
-    float energy = AnnealingExperimentTask.getMeanContention(
-        AnnealingExperimentTask.getCoverage(state, disks, this.config.transmitters),
-        this.config.transmitters, this.config.numTransmitters);
-    Collection<Point2D> bestState = state;
-    float bestEnergy = energy;
-    float temperature = 1.0f;
-    float delta = 0.01f; // 500 iterations
-    while (temperature <= 6.0) {
-      System.out.println("On temperature "+temperature);
-      for (Point2D p : state) {
-        Point2D possiblePoint = AnnealingExperimentTask.getRandomNeighbor(p, adjacencies);
-        Collection<Point2D> possibleState = new LinkedList<Point2D>();
-        //TODO FIXME Copy from state into possible state but insert possible point for p
-        //TODO FIXME Replace this code with something sensible when the internet is available
-        boolean replaced = false;
-        for (Point2D cur_p : state) {
-          if (replaced || p != cur_p) {
-            possibleState.add(cur_p);
-          }
-          else {
-            replaced = true;
-            possibleState.add(possiblePoint);
+    log.info(String.format(
+        "[%d] Ran %,d chains of %,d moves in %,dms: %,d of %,d disks covered.",
+        Integer.valueOf(this.config.trialNumber), Integer.valueOf(numChains),
+        Long.valueOf(Main.config.annealingIterations),
+        Long.valueOf(System.currentTimeMillis() - start),
+        Integer.valueOf(best.bestCovered), Integer.valueOf(disks.size())));
+
+    // Order the receivers greedily, so that the statistics for fewer receivers
+    // describe the best subset of the placement
+    final List<Receiver> placed = new ArrayList<Receiver>();
+    for (final int p : best.bestPosition) {
+      final Receiver rxer = new Receiver();
+      rxer.setLocation(candidates.x[p], candidates.y[p]);
+      rxer.coveringDisks = new ArrayList<CaptureDisk>();
+      index.collect(candidates.x[p], candidates.y[p], rxer.coveringDisks);
+      placed.add(rxer);
+    }
+    final boolean[] isCovered = new boolean[disks.capacity()];
+    final int totalCaptureDisks = disks.size();
+    int capturedDisks = 0;
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
+    for (int m = 0; m < this.config.numReceivers; ++m) {
+      Receiver rxer = null;
+      int maxGain = -1;
+      for (final Receiver candidate : placed) {
+        int gain = 0;
+        for (final CaptureDisk d : candidate.coveringDisks) {
+          if (!isCovered[d.index]) {
+            ++gain;
           }
         }
-        float possibleEnergy = AnnealingExperimentTask.getMeanContention(
-            AnnealingExperimentTask.getCoverage(possibleState, disks, this.config.transmitters),
-            this.config.transmitters, this.config.numTransmitters);
-        // transitionProb may be > 1, but the result is the same
-        //float transitionProb = (float)Math.pow(0.5f + energy / (energy+possibleEnergy), temperature);
-        float transitionProb = (float)Math.pow(energy/possibleEnergy, 11.0 - temperature);
-        if (possibleEnergy < energy ||
-            Math.random() < transitionProb) {
-          state = possibleState;
-          energy = possibleEnergy;
-          if (bestEnergy > energy) {
-            System.out.println("Moving mean contention "+bestEnergy+" to "+possibleEnergy);
-            bestState = state;
-            bestEnergy = energy;
-          }
+        if (gain > maxGain) {
+          maxGain = gain;
+          rxer = candidate;
         }
       }
-      temperature += delta;
-    }
-    // Log statistics for best state
-    // TODO FIXME Log other statistics besides just contention
-    this.stats[this.config.numReceivers-1].addContention(AnnealingExperimentTask.getMeanContention(
-          AnnealingExperimentTask.getCoverage(bestState, disks, this.config.transmitters),
-          this.config.transmitters, this.config.numTransmitters));
-
-    // Keep going while there are either solution points or capture disks
-    Collection<Receiver> receivers = new LinkedList<Receiver>();
-    // Keep track of which collisions are captured so that packet loss
-    // probabilities can be quickly calculated
-    ConcurrentHashMap<Transmitter, HashSet<Transmitter>> capturedCollisions = new ConcurrentHashMap<Transmitter, HashSet<Transmitter>>();
-    // Add an empty set for each transmitter
-    for (Transmitter txer : this.config.transmitters) {
-      capturedCollisions.put(txer, new HashSet<Transmitter>());
+      placed.remove(rxer);
+      for (final CaptureDisk d : rxer.coveringDisks) {
+        isCovered[d.index] = true;
+      }
+      capturedDisks += maxGain;
+      this.config.receivers.add(rxer);
+
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(rxer.coveringDisks);
+
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
+      this.stats[m].addCoverage((float) capturedDisks / totalCaptureDisks);
+
+      if (Main.gfxConfig.generateImages) {
+        this.render.setTransmitters(this.config.transmitters);
+        this.render.setReceiverPoints(this.config.receivers);
+        Main.saveImage(this.render, String.format(this.saveDirectory
+            + File.separator + "1%03d", Integer.valueOf(m + 1)));
+        this.render.clear();
+      }
     }
-    adjacencies.clear();
 
-    disks.clear();
-    solutionPoints.clear();
     this.config.transmitters.clear();
     Runtime.getRuntime().gc();
     return Boolean.TRUE;
   }
 
-  //Get energy of the coverage map
-  private static float getMeanContention(HashMap<Transmitter, HashSet<Transmitter>> coverage,
-      Collection<Transmitter> transmitters, int numTransmitters) {
-    float mean_contention = 0.0f;
-    for (Transmitter txer : transmitters) {
-      // Calculate the number of transmitters in contention
-      // Subtract 1 because this transmitter can never be in contention with itself
-      int num_in_contention = numTransmitters - 1 - coverage.get(txer).size();
-      mean_contention += (float)num_in_contention / numTransmitters;
-    }
-    //System.out.println("Mean contention is "+mean_contention);
-    return mean_contention;
-  }
-
-  static boolean checkPointInDisk(Point2D p, CaptureDisk d) {
-    double dist1 = Math.sqrt(Math.pow(p.getX() - d.t1.getX(), 2)
-        + Math.pow(p.getY() - d.t1.getY(), 2));
-    double dist2 = Math.sqrt(Math.pow(p.getX() - d.t2.getX(), 2)
-        + Math.pow(p.getY() - d.t2.getY(), 2));
-    // This point is too far away from the transmitters for this disk
-    if (dist1 > Main.config.maxRangeMeters
-        && dist2 > Main.config.maxRangeMeters) {
-      return false;
-    }
-    return d.disk.contains(p);
-
-  }
-
-  private static Point2D getRandomNeighbor(Point2D p,
-      TreeMap<Point2D, HashSet<Point2D>> adjacencies) {
-    double r = Math.random();
-    int cur = 0;
-    double end = r * adjacencies.get(p).size();
-    for (Point2D neighbor : adjacencies.get(p)) {
-      cur += 1;
-      if (cur >= end) {
-        return neighbor;
-      }
-    }
-    System.out.println("getRandomNeighbor borked.");
-    return null;
-    //throw new Exception("getRandomNeighbor borked");
-  }
-
   /**
-   * Generate solution points and populate the adjacency list.
+   * Generates the candidate positions: the disk centers within the universe
+   * and in range of a transmitter, and the intersection points of the disks.
    */
-  private static Collection<Point2D> generateSolutionPoints(
-      Collection<CaptureDisk> disks, Collection<Transmitter> transmitters,
-      TreeMap<Point2D, HashSet<Point2D>> adjacencies) {
-    System.out.println("Building solution points and adjacencies");
-    // Add center points of all capture disks as solutions
-    Collection<Point2D> solutionPoints = new HashSet<Point2D>();
-    int disk_num = 0;
-    for (CaptureDisk d1 : disks) {
-      disk_num += 1;
-      System.out.println("On disk number "+disk_num+" out of "+disks.size());
-      // Build an adjacency list disk by disk
-      Collection<Point2D> pointsInDisk = new LinkedList<Point2D>();
-      // Check if the center point can be added
-      if (d1.disk.getCenterX() >= 0
-          && d1.disk.getCenterX() < Main.config.universeWidth
-          && d1.disk.getCenterY() >= 0
-          && d1.disk.getCenterY() < Main.config.universeHeight) {
-        Point2D.Float center = new Point2D.Float((float) d1.disk.getCenterX(),
-            (float) d1.disk.getCenterY());
-        if (AnnealingExperimentTask.checkPointInRange(center, transmitters)) {
-          solutionPoints.add(center);
-          // Add this new solution point to the adjacency list
-          adjacencies.put(center, new HashSet<Point2D>());
-
-          // Mark this point adjacent to all points in the disk, all points
-          // in the disk adjacent to this point, and add this point to the
-          // disk's list
-          for (Point2D adjPoint : pointsInDisk) {
-            adjacencies.get(center).add(adjPoint);
-            adjacencies.get(adjPoint).add(center);
-          }
-          pointsInDisk.add(center);
-        }
-      }
-      // Add intersection of all capture disks as solutions
-      for (CaptureDisk d2 : disks) {
-        Collection<Point2D> intersections = Main.generateIntersections(d1, d2);
-        if (intersections != null && !intersections.isEmpty()) {
-          for (Point2D p : intersections) {
-            if (AnnealingExperimentTask.checkPointInRange(p, transmitters)) {
-              //Add this as a solution point
-              solutionPoints.add(p);
-              // Add this new solution point to the adjacency list
-              adjacencies.put(p, new HashSet<Point2D>());
-
-              // Mark this point adjacent to all points in the disk, all points
-              // in the disk adjacent to this point, and add this point to the
-              // disk's list
-              for (Point2D adjPoint : pointsInDisk) {
-                adjacencies.get(p).add(adjPoint);
-                adjacencies.get(adjPoint).add(p);
-              }
-              pointsInDisk.add(p);
-            }
-          }
-        }
+  private static Candidates generateCandidates(final CaptureDiskTable disks,
+      final Collection<Transmitter> transmitters, final ExecutorService workers) {
+    final RangeMask inRange = new RangeMask(transmitters,
+        Main.config.maxRangeMeters);
+    final DiskIntersections intersections = DiskIntersections.find(
+        disks.disks, inRange, workers);
+    final int numDisks = disks.capacity();
+    int numCenters = 0;
+    final boolean[] hasCenter = new boolean[numDisks];
+    for (int d = 0; d < numDisks; ++d) {
+      final float x = disks.centerX[d];
+      final float y = disks.centerY[d];
+      if (x >= 0 && x < Main.config.universeWidth && y >= 0
+          && y < Main.config.universeHeight && inRange.contains(x, y)) {
+        hasCenter[d] = true;
+        ++numCenters;
       }
     }
-    return solutionPoints;
-  }
-
-  /**
-   * Get the collisions covered for each transmitter
-   */
-  private static HashMap<Transmitter, HashSet<Transmitter>> getCoverage(
-      Collection<Point2D> state,
-      Collection<CaptureDisk> disks, Collection<Transmitter> transmitters) {
-    HashMap<Transmitter, HashSet<Transmitter>> coverage = new HashMap<Transmitter, HashSet<Transmitter>>();
-    // Initialize each set to empty
-    for (Transmitter txer : transmitters) {
-      coverage.put(txer, new HashSet<Transmitter>());
-    }
-
-    // Fill in coverage information. Put the capture disks in the outer
-    // loop since that map will go out of memory
-    for (CaptureDisk d : disks) {
-      for (Point2D p : state) {
-        double x = d.disk.getCenterX();
-        double y = d.disk.getCenterY();
-        float radius = d.disk.radius;
-        //Point in disk? Add to map
-        if (p.getX() >= x - radius &&
-            p.getX() < x + radius &&
-            p.getY() >= y - radius &&
-            p.getY() < y + radius) {
-          coverage.get(d.t1).add(d.t2);
-        }
+    final int size = numCenters + intersections.size;
+    final float[] x = new float[size];
+    final float[] y = new float[size];
+    final int[] first = new int[size];
+    final int[] second = new int[size];
+    int n = 0;
+    for (int d = 0; d < numDisks; ++d) {
+      if (hasCenter[d]) {
+        x[n] = disks.centerX[d];
+        y[n] = disks.centerY[d];
+        first[n] = d;
+        second[n] = d;
+        ++n;
       }
     }
-    return coverage;
-  }
-
-  /**
-   * Returns true if a point is within the transmit radius of at least one
-   * transmitter, else false.
-   * 
-   * @param p
-   *          the point to test.
-   * @return {@code true} if the point is within the transmit radius of at
-   *         leaset one transmitter.
-   */
-  private static boolean checkPointInRange(Point2D p,
-      Collection<Transmitter> transmitters) {
-    for (Transmitter t : transmitters) {
-      double d = Math.sqrt(Math.pow(p.getX() - t.getX(), 2)
-          + Math.pow(p.getY() - t.getY(), 2));
-      if (d < Main.config.maxRangeMeters) {
-        return true;
-      }
+    for (int i = 0; i < intersections.size; ++i, ++n) {
+      x[n] = intersections.points[2 * i];
+      y[n] = intersections.points[2 * i + 1];
+      first[n] = intersections.first[i];
+      second[n] = intersections.second[i];
     }
-    return false;
+    return new Candidates(x, y, first, second, numDisks);
   }
 
 }
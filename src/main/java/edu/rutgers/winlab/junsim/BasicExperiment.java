@@ -22,16 +22,15 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
@@ -102,13 +101,24 @@ public class BasicExperiment implements Experiment {
     private static final Logger log = LoggerFactory.getLogger(SolutionCheckTask.class);
     
     /**
-     * Set of points this task should check.
+     * Points this task should check, shared with the other tasks.
      */
-    Collection<Point2D> solutionPoints;
+    PointBatches solutionPoints;
+
+    /**
+     * Index of the best point this task found, for breaking ties between
+     * tasks.
+     */
+    int maxIndex = -1;
     /**
      * Set of capture disks to check for intersections
      */
-    Collection<CaptureDisk> disks;
+    DiskIndex disks;
+    /**
+     * Best score found so far by any task scoring the same receiver, or
+     * {@code null} to fully score every point.
+     */
+    AtomicInteger globalBest;
 
     /**
      * Creates a new solution check task.
@@ -122,8 +132,6 @@ public class BasicExperiment implements Experiment {
 
         
       
-      Point2D maxPoint = null;
-      Collection<CaptureDisk> maxPointDisks = null;
       int maxDisks = 0;
       final int totalDisks = this.disks.size();
       log.info(String.format("Computing %,d points for %,d disks.",this.solutionPoints.size(),totalDisks));
@@ -131,39 +139,44 @@ public class BasicExperiment implements Experiment {
        * Determine the number of disks that intersect this point. If the number
        * is the new max, then save it. If there are no intersections, remove it.
        */
-      points: for (final Iterator<Point2D> iter = this.solutionPoints.iterator(); iter.hasNext();) {
-        final Point2D p = iter.next();
-        final Collection<CaptureDisk> pDisk = new HashSet<CaptureDisk>();
-//        int numIntersect = 0;
-//        int diskIndex = 0;
-        
-        
-        for (final CaptureDisk d : this.disks) {
-          if (BasicExperiment.checkPointInDisk(p, d)) {
-            pDisk.add(d);
-//            ++numIntersect;
+      final int[] batch = new int[2];
+      while (this.solutionPoints.next(batch)) {
+        for (int i = batch[0]; i < batch[1]; ++i) {
+          final float x = this.solutionPoints.getX(i);
+          final float y = this.solutionPoints.getY(i);
+          final int count;
+          if (this.globalBest != null) {
+            // Only a point that can tie or beat every task's best is of interest
+            final int bound = Math.max(maxDisks, this.globalBest.get());
+            count = this.disks.countAtLeast(x, y, bound);
+            int current = this.globalBest.get();
+            while (count > current
+                && !this.globalBest.compareAndSet(current, count)) {
+              current = this.globalBest.get();
+            }
+          } else {
+            count = this.disks.count(x, y);
+          }
+          if (count > maxDisks) {
+            maxDisks = count;
+            this.maxIndex = i;
           }
-//          ++diskIndex;
-//          if((numIntersect + (totalDisks -diskIndex)) < maxDisks){
-//            continue points;
-//          }
-        }
-        if (pDisk.size() > maxDisks) {
-          maxDisks = pDisk.size();
-          maxPoint = p;
-          maxPointDisks = pDisk;
-        }
 //      Remove points that have no overlaps
-        else if(pDisk.isEmpty()){
-          iter.remove();
+          else if(count == 0){
+            this.solutionPoints.discard(i);
+          }
         }
       }
       final Receiver maxReceiver = new Receiver();
       // Remove the highest point and its solution disks
-      if (maxPoint != null) {
+      if (this.maxIndex >= 0) {
+        final Point2D maxPoint = this.solutionPoints.get(this.maxIndex);
 
         maxReceiver.setLocation(maxPoint);
-        maxReceiver.coveringDisks = maxPointDisks;
+        // Only the winner's covering disks are materialized
+        maxReceiver.coveringDisks = new ArrayList<CaptureDisk>(maxDisks);
+        this.disks.collect(maxPoint.getX(), maxPoint.getY(),
+            maxReceiver.coveringDisks);
 
       }
       // No solutions found?
@@ -189,16 +202,10 @@ public class BasicExperiment implements Experiment {
 
     }
 
-    final Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
     // Compute all possible capture disks
-    for (final Transmitter t1 : this.config.transmitters) {
-      for (final Transmitter t2 : this.config.transmitters) {
-        final CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
-        if (someDisk != null) {
-          disks.add(someDisk);
-        }
-      }
-    }
+    final CaptureDiskTable disks = new CaptureDiskTable(Main
+        .generateCaptureDisks(this.config.transmitters, this.workers));
+    final DiskIndex index = new DiskIndex(disks);
     if (Main.gfxConfig.generateImages) {
       display.setTransmitters(this.config.transmitters);
       display.setCaptureDisks(disks);
@@ -213,8 +220,12 @@ public class BasicExperiment implements Experiment {
         + disks.size() + " disks.");
     
 
-    Collection<Point2D> solutionPoints = BasicExperiment
-        .generateSolutionPoints(disks, this.config.transmitters);
+    // Streamed points are generated again for each receiver instead
+    final boolean streaming = "stream"
+        .equalsIgnoreCase(Main.config.selectionMode);
+    CandidateStore solutionPoints = streaming ? new CandidateStore()
+        : BasicExperiment.generateSolutionPoints(disks,
+            this.config.transmitters, this.workers);
     log.info(String.format("[%d] Generated %,d solution points.\n",
         this.config.trialNumber, solutionPoints.size()));
     
@@ -227,121 +238,106 @@ public class BasicExperiment implements Experiment {
 //    final Collection<Receiver> receivers = new LinkedList<Receiver>();
     // Keep track of which collisions are captured so that packet loss
     // probabilities can be quickly calculated
-    final ConcurrentHashMap<Transmitter, HashSet<Transmitter>> capturedCollisions = new ConcurrentHashMap<Transmitter, HashSet<Transmitter>>();
-    // Add an empty set for each transmitter
-    for (final Transmitter txer : this.config.transmitters) {
-      capturedCollisions.put(txer, new HashSet<Transmitter>());
-    }
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
+
+    ReceiverSelector selector = streaming ? new StreamingSelector(disks, index,
+        this.config.transmitters, this.workers) : Main.createSelector(
+        solutionPoints, index, disks, this.workers);
 
-    while (m < this.config.numReceivers && !solutionPoints.isEmpty()
-        && !disks.isEmpty()) {
+    while (m < this.config.numReceivers
+        && (streaming || !solutionPoints.isEmpty()) && !disks.isEmpty()) {
       log.info("[" + this.config.trialNumber
           + "] Calculating position for receiver " + (m + 1) + ".");
       // HashMap<Point2D, Collection<CaptureDisk>> bipartiteGraph = new
       // HashMap<Point2D, Collection<CaptureDisk>>();
 
-      final int numTasks = Main.config.numThreads;
-      final int numPoints = solutionPoints.size();
-      final int pointsPerTask = (numPoints / numTasks) + 1;
-      final long numComparisons = disks.size() * (long) numPoints;
-
-      final Collection<SolutionCheckTask> tasks = new LinkedList<BasicExperiment.SolutionCheckTask>();
-      final Iterator<Point2D> pointIter = solutionPoints.iterator();
-      SolutionCheckTask task = new SolutionCheckTask();
-      task.solutionPoints = new LinkedList<Point2D>();
-      task.disks = disks;
-      // task.parent = this;
-      tasks.add(task);
-      for (int i = 0; pointIter.hasNext(); ++i) {
-        task.solutionPoints.add(pointIter.next());
-        if (i == pointsPerTask) {
-          i = 0;
-          task = new SolutionCheckTask();
-          task.solutionPoints = new LinkedList<Point2D>();
-          task.disks = disks;
-          // task.parent = this;
+      Receiver maxReceiver = null;
+      if (selector != null) {
+        final long start = System.currentTimeMillis();
+        maxReceiver = selector.next();
+        log.info(String.format("Selected receiver in %,dms.\n",
+            System.currentTimeMillis() - start));
+      } else {
+        final int numTasks = Main.config.numThreads;
+        final int numPoints = solutionPoints.size();
+        final long numComparisons = disks.size() * (long) numPoints;
+
+        final AtomicInteger best = Main.config.branchAndBound ? new AtomicInteger(
+            0) : null;
+        final PointBatches batches = new PointBatches(solutionPoints, numTasks);
+        final List<SolutionCheckTask> tasks = new ArrayList<BasicExperiment.SolutionCheckTask>(
+            numTasks);
+        for (int i = 0; i < numTasks; ++i) {
+          final SolutionCheckTask task = new SolutionCheckTask();
+          task.solutionPoints = batches;
+          task.disks = index;
+          task.globalBest = best;
           tasks.add(task);
         }
-      }
-      int sumTasks = 0;
-      for (final SolutionCheckTask t : tasks) {
-        log.info(String.format("Task (%,d)\n", t.solutionPoints.size()));
-        sumTasks += t.solutionPoints.size();
-      }
 
-      log.info(String.format("Divided %,d/%,d points.\n", sumTasks, numPoints));
-      final long start = System.currentTimeMillis();
-      Receiver maxReceiver = null;
-      try {
-        final List<Future<Receiver>> solutions = this.workers.invokeAll(tasks);
-
-        for (final Future<Receiver> future : solutions) {
-          if (future.isCancelled() || !future.isDone()) {
-           log.error("One of the tasks was cancelled! Double-check the code!");
-            return Boolean.FALSE;
-          }
-          try {
-            final Receiver r = future.get();
-            if (r == null) {
-              continue;
+        log.info(String.format("Sharing %,d points between %,d tasks.\n",
+            numPoints, numTasks));
+        final long start = System.currentTimeMillis();
+        try {
+          final List<Future<Receiver>> solutions = this.workers.invokeAll(tasks);
+
+          int maxIndex = -1;
+          for (int t = 0; t < solutions.size(); ++t) {
+            final Future<Receiver> future = solutions.get(t);
+            if (future.isCancelled() || !future.isDone()) {
+             log.error("One of the tasks was cancelled! Double-check the code!");
+              return Boolean.FALSE;
             }
-            if (maxReceiver == null
-                || r.coveringDisks.size() > maxReceiver.coveringDisks.size()) {
-              maxReceiver = r;
+            try {
+              final Receiver r = future.get();
+              if (r == null) {
+                continue;
+              }
+              // Equal scores go to the earliest point, as in a single pass
+              final int rIndex = tasks.get(t).maxIndex;
+              if (maxReceiver == null
+                  || r.coveringDisks.size() > maxReceiver.coveringDisks.size()
+                  || (r.coveringDisks.size() == maxReceiver.coveringDisks
+                      .size() && rIndex < maxIndex)) {
+                maxReceiver = r;
+                maxIndex = rIndex;
+              }
+            } catch (final ExecutionException e) {
+              // TODO Auto-generated catch block
+              e.printStackTrace();
             }
-          } catch (final ExecutionException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
           }
+
+        } catch (final InterruptedException e) {
+          e.printStackTrace();
         }
+        final long duration = System.currentTimeMillis() - start;
+        log.info(String.format("Computed %,d comparisons in %,dms.\n", numComparisons,
+            duration));
 
-      } catch (final InterruptedException e) {
-        e.printStackTrace();
+        solutionPoints = batches.remaining();
       }
-      final long duration = System.currentTimeMillis() - start;
-      log.info(String.format("Computed %,d comparisons in %,dms.\n", numComparisons,
-          duration));
 
       if (maxReceiver == null) {
         break;
       }
 
-      solutionPoints.clear();
-      for (final SolutionCheckTask t : tasks) {
-        solutionPoints.addAll(t.solutionPoints);
-      }
-
       // Add the newest receiver and remove newly covered points and disks
       this.config.receivers.add(maxReceiver);
       solutionPoints.remove(maxReceiver);
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : maxReceiver.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(maxReceiver.coveringDisks);
+      index.removeAll(maxReceiver.coveringDisks);
+      if (selector != null) {
+        selector.removeAll(maxReceiver.coveringDisks);
       }
-      disks.removeAll(maxReceiver.coveringDisks);
-
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
-      }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
+
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
 
       final float capturedDisks = totalCaptureDisks - disks.size();
       final float captureRatio = (capturedDisks / totalCaptureDisks);
@@ -362,12 +358,16 @@ public class BasicExperiment implements Experiment {
       this.stats[m].addCoverage(captureRatio);
       ++m;
       // Recompute solution points based on remaining disks
-      if (Main.config.stripSolutionPoints) {
+      if (Main.config.stripSolutionPoints && !streaming) {
         solutionPoints.clear();
         solutionPoints = BasicExperiment.generateSolutionPoints(disks,
-            this.config.transmitters);
+            this.config.transmitters, this.workers);
         log.info("[" + this.config.trialNumber + "] Regenerated "
             + solutionPoints.size() + " solution points.");
+        if (selector != null) {
+          selector = Main.createSelector(solutionPoints, index, disks,
+              this.workers);
+        }
       }
 
     } // End for each receiver
@@ -380,24 +380,14 @@ public class BasicExperiment implements Experiment {
     return Boolean.TRUE;
   }
 
-  static boolean checkPointInDisk(final Point2D p, final CaptureDisk d) {
-    final double dist1 = Math.sqrt(Math.pow(p.getX() - d.t1.getX(), 2)
-        + Math.pow(p.getY() - d.t1.getY(), 2));
-    final double dist2 = Math.sqrt(Math.pow(p.getX() - d.t2.getX(), 2)
-        + Math.pow(p.getY() - d.t2.getY(), 2));
-    // This point is too far away from the transmitters for this disk
-    if (dist1 > Main.config.maxRangeMeters
-        && dist2 > Main.config.maxRangeMeters) {
-      return false;
-    }
-    return d.disk.contains(p);
-
-  }
-
-  private static Collection<Point2D> generateSolutionPoints(
-      final Collection<CaptureDisk> disks, final Collection<Transmitter> transmitters) {
+  private static CandidateStore generateSolutionPoints(
+      final Collection<CaptureDisk> disks,
+      final Collection<Transmitter> transmitters, final ExecutorService workers) {
+    final RangeMask inRange = new RangeMask(transmitters,
+        Main.config.maxRangeMeters);
     // Add center points of all capture disks as solutions
-    final Collection<Point2D> solutionPoints = new HashSet<Point2D>();
+    final CandidateStore solutionPoints = new CandidateStore(disks.size(),
+        Main.config.candidateEpsilon);
     for (final CaptureDisk disk : disks) {
       if (disk.disk.getCenterX() < 0
           || disk.disk.getCenterX() >= Main.config.universeWidth
@@ -405,49 +395,24 @@ public class BasicExperiment implements Experiment {
           || disk.disk.getCenterY() > Main.config.universeHeight) {
         continue;
       }
-      final Point2D.Float center = new Point2D.Float((float) disk.disk.getCenterX(),
-          (float) disk.disk.getCenterY());
-      if (BasicExperiment.checkPointInRange(center, transmitters)) {
-        solutionPoints.add(center);
+      if (inRange.contains(disk.disk.center.x, disk.disk.center.y)) {
+        solutionPoints.add(disk.disk.center.x, disk.disk.center.y);
       }
     }
 
     // Add intersection of all capture disks as solutions
-    for (final CaptureDisk d1 : disks) {
-      for (final CaptureDisk d2 : disks) {
-        final Collection<Point2D> intersections = Main.generateIntersections(d1, d2);
-        if (intersections != null && !intersections.isEmpty()) {
-          for (final Point2D p : intersections) {
-            if (BasicExperiment.checkPointInRange(p, transmitters)) {
-              solutionPoints.add(p);
-            }
-          }
-        }
-      }
+    final DiskIntersections intersections = DiskIntersections.find(
+        disks.toArray(new CaptureDisk[disks.size()]), inRange, workers);
+    for (int i = 0; i < intersections.size; ++i) {
+      solutionPoints.add(intersections.points[2 * i],
+          intersections.points[2 * i + 1]);
     }
+    log.info(String.format(
+        "Generated %,d solution points (%,d duplicates removed).",
+        Integer.valueOf(solutionPoints.size()),
+        Long.valueOf(solutionPoints.getDuplicates())));
 
     return solutionPoints;
   }
 
-  /**
-   * Returns true if a point is within the transmit radius of at least one
-   * transmitter, else false.
-   * 
-   * @param p
-   *          the point to test.
-   * @return {@code true} if the point is within the transmit radius of at
-   *         leaset one transmitter.
-   */
-  private static boolean checkPointInRange(final Point2D p,
-      final Collection<Transmitter> transmitters) {
-    for (final Transmitter t : transmitters) {
-      final double d = Math.sqrt(Math.pow(p.getX() - t.getX(), 2)
-          + Math.pow(p.getY() - t.getY(), 2));
-      if (d < Main.config.maxRangeMeters) {
-        return true;
-      }
-    }
-    return false;
-  }
-
 }
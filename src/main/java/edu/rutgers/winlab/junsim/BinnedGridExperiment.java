@@ -22,15 +22,12 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -121,13 +118,26 @@ public class BinnedGridExperiment implements Experiment {
         .getLogger(SolutionCheckTask.class);
 
     /**
-     * Set of points this task should check.
+     * Points this task should check, shared with the other tasks.
      */
-    Collection<Point2D> solutionPoints;
+    PointBatches solutionPoints;
+
+    /**
+     * Index of the best point this task found, for breaking ties between
+     * tasks.
+     */
+    int maxIndex = -1;
+    /**
+     * Set of capture disks to check for intersections, or {@code null} if the
+     * disks were not generated.
+     */
+    DiskIndex disks;
+
     /**
-     * Set of capture disks to check for intersections
+     * Scores points from the transmitter positions instead, if not
+     * {@code null}. Required if there are no disks.
      */
-    Collection<CaptureDisk> disks;
+    PairFreeScorer scorer;
 
     /**
      * Reference to the bins for points.
@@ -146,45 +156,51 @@ public class BinnedGridExperiment implements Experiment {
     @Override
     public Receiver call() {
 
-      Point2D maxPoint = null;
-      Collection<CaptureDisk> maxPointDisks = null;
       int maxDisks = 0;
-      final int totalDisks = this.disks.size();
+      final int totalDisks = this.disks != null ? this.disks.size()
+          : this.scorer.getNumRemaining();
       log.info(String.format("Computing %,d points for %,d disks.",
           this.solutionPoints.size(), totalDisks));
       /*
        * Determine the number of disks that intersect this point. If the number
        * is the new max, then save it. If there are no intersections, remove it.
        */
-      points: for (final Iterator<Point2D> iter = this.solutionPoints
-          .iterator(); iter.hasNext();) {
-        final Point2D p = iter.next();
-        final Collection<CaptureDisk> pDisk = new HashSet<CaptureDisk>();
-
-        for (final CaptureDisk d : this.disks) {
-          if (BinnedGridExperiment.checkPointInDisk(p, d)) {
-            pDisk.add(d);
-          }
-        }
-        int size = pDisk.size();
-
-        if (size > 0) {
-          int bindex = this.binner.put(p, size);
+      final int[] batch = new int[2];
+      while (this.solutionPoints.next(batch)) {
+        for (int i = batch[0]; i < batch[1]; ++i) {
+          final float x = this.solutionPoints.getX(i);
+          final float y = this.solutionPoints.getY(i);
+          final int size = this.scorer != null ? this.scorer.count(x, y)
+              : this.disks.count(x, y);
+
+          if (size > 0) {
+            this.solutionPoints.setScore(i, size);
+            int bindex = this.binner.getBindex(size);
           
-          // Add to bin
-          if (size > maxDisks && bindex >= this.desiredBin) {
-            maxDisks = size;
-            maxPoint = p;
-            maxPointDisks = pDisk;
+            // Add to bin
+            if (size > maxDisks && bindex >= this.desiredBin) {
+              maxDisks = size;
+              this.maxIndex = i;
+            }
           }
-        }
 
+        }
       }
       final Receiver maxReceiver = new Receiver();
       // Remove the highest point and its solution disks
-      if (maxPoint != null) {
+      if (this.maxIndex >= 0) {
+        final Point2D maxPoint = this.solutionPoints.get(this.maxIndex);
         maxReceiver.setLocation(maxPoint);
-        maxReceiver.coveringDisks = maxPointDisks;
+        // Only the winner's covering disks are materialized
+        maxReceiver.coveringDisks = new ArrayList<CaptureDisk>(maxDisks);
+        // The disks are found the same way the point was scored
+        if (this.scorer != null) {
+          this.scorer.collect(maxPoint.getX(), maxPoint.getY(),
+              maxReceiver.coveringDisks);
+        } else {
+          this.disks.collect(maxPoint.getX(), maxPoint.getY(),
+              maxReceiver.coveringDisks);
+        }
       }
       // No solutions found?
       else {
@@ -201,15 +217,25 @@ public class BinnedGridExperiment implements Experiment {
     
    
 
-       final Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
+    final PairFreeScorer scorer = Main.config.pairFreeScoring ? new PairFreeScorer(
+        this.config.transmitters) : null;
+    // Rasterized lattice points are never generated
+    final boolean raster = "raster"
+        .equalsIgnoreCase(Main.config.selectionMode);
+    // Greedy selection from the transmitter pairs only needs the disks to draw
+    // them
+    final boolean needDisks = scorer == null || Main.gfxConfig.generateImages
+        || !"greedy".equalsIgnoreCase(Main.config.selectionMode);
+
     // Compute all possible capture disks
-    for (final Transmitter t1 : this.config.transmitters) {
-      for (final Transmitter t2 : this.config.transmitters) {
-        final CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
-        if (someDisk != null) {
-          disks.add(someDisk);
-        }
-      }
+    final CaptureDiskTable disks = needDisks ? new CaptureDiskTable(Main
+        .generateCaptureDisks(this.config.transmitters, this.workers)) : null;
+    final DiskIndex index = needDisks ? new DiskIndex(disks) : null;
+    if (disks == null) {
+      scorer.addUnstoredDisks();
+    } else if (scorer != null) {
+      // The scorer decides coverage, the table follows it for drawing
+      scorer.useStoredDisks();
     }
     if (Main.gfxConfig.generateImages) {
       this.render.setTransmitters(this.config.transmitters);
@@ -222,16 +248,17 @@ public class BinnedGridExperiment implements Experiment {
 
     }
     
-    log.info("[" + this.config.trialNumber + "] Generated " + disks.size()
-        + " disks.");
+    log.info("[" + this.config.trialNumber + "] Generated "
+        + PairFreeScorer.remaining(disks, scorer) + " disks.");
 
-    Collection<Point2D> startingPoints = BinnedGridExperiment
-        .generateSolutionPoints(Main.config.universeWidth, Main.config.universeHeight, this.config.transmitters);
+    Collection<Point2D> startingPoints = raster ? new CandidateStore()
+        : BinnedGridExperiment.generateSolutionPoints(Main.config.universeWidth,
+            Main.config.universeHeight, this.config.transmitters);
     log.info(String.format("[%d] Generated %,d solution points.\n",
         this.config.trialNumber, startingPoints.size()));
    
 
-    final int totalCaptureDisks = disks.size();
+    final int totalCaptureDisks = PairFreeScorer.remaining(disks, scorer);
     // final int startingSolutionPoints = startingPoints.size();
     int m = 0;
 
@@ -239,145 +266,141 @@ public class BinnedGridExperiment implements Experiment {
 //    final Collection<Receiver> receivers = new LinkedList<Receiver>();
     // Keep track of which collisions are captured so that packet loss
     // probabilities can be quickly calculated
-    final ConcurrentHashMap<Transmitter, HashSet<Transmitter>> capturedCollisions = new ConcurrentHashMap<Transmitter, HashSet<Transmitter>>();
-    // Add an empty set for each transmitter
-    for (final Transmitter txer : this.config.transmitters) {
-      capturedCollisions.put(txer, new HashSet<Transmitter>());
-    }
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
 
-    this.binner = new Binner(this.numBins, 1, disks.size() / 3);
+    this.binner = new Binner(this.numBins, 1, totalCaptureDisks / 3);
     this.binner.set(startingPoints, 1);
 
+    final ReceiverSelector selector = raster ? new RasterSelector(disks,
+        index, this.config.transmitters, this.workers) : Main.createSelector(
+        startingPoints, index, disks, this.workers);
+
     int highestBindex = 0;
-    while (m < this.config.numReceivers && !disks.isEmpty()) {
+    while (m < this.config.numReceivers && PairFreeScorer.remaining(disks, scorer) > 0) {
 
-      this.binner.printBins();
       log.info("[" + this.config.trialNumber
           + "] Calculating position for receiver " + (m + 1) + ".");
 
-      Set<Point2D> thePoints = this.binner.getMaxBin();
+      Receiver maxReceiver = null;
+      if (selector != null) {
+        final long start = System.currentTimeMillis();
+        maxReceiver = selector.next();
+        log.info(String.format("Selected receiver in %,dms.\n",
+            System.currentTimeMillis() - start));
+        if (maxReceiver == null) {
+          break;
+        }
+      } else {
+        this.binner.printBins();
+        CandidateStore thePoints = this.binner.getMaxBin();
 
-      if (thePoints == null) {
-        log.info("No more points available in the bins.");
-        break;
-      }
+        if (thePoints == null) {
+          log.info("No more points available in the bins.");
+          break;
+        }
 
-      final int numTasks = Main.config.numThreads;
-      final int numPoints = thePoints.size();
-      final int pointsPerTask = (numPoints / numTasks) + 1;
-      final long numComparisons = disks.size() * (long) numPoints;
-
-      final Collection<SolutionCheckTask> tasks = new LinkedList<BinnedGridExperiment.SolutionCheckTask>();
-      final Iterator<Point2D> pointIter = thePoints.iterator();
-      SolutionCheckTask task = new SolutionCheckTask();
-      task.solutionPoints = new LinkedList<Point2D>();
-      task.disks = disks;
-      task.desiredBin = highestBindex;
-      task.binner = this.binner;
-      // task.parent = this;
-      tasks.add(task);
-      for (int i = 0; pointIter.hasNext(); ++i) {
-        task.solutionPoints.add(pointIter.next());
-        pointIter.remove();
-        if (i == pointsPerTask) {
-          i = 0;
-          task = new SolutionCheckTask();
-          task.solutionPoints = new LinkedList<Point2D>();
-          task.disks = disks;
-          task.binner = this.binner;
+        final int numTasks = Main.config.numThreads;
+        final int numPoints = thePoints.size();
+        final long numComparisons = PairFreeScorer.remaining(disks, scorer)
+            * (long) numPoints;
+
+        final PointBatches batches = new PointBatches(thePoints, numTasks);
+        thePoints.clear();
+        final List<SolutionCheckTask> tasks = new ArrayList<BinnedGridExperiment.SolutionCheckTask>(
+            numTasks);
+        for (int i = 0; i < numTasks; ++i) {
+          final SolutionCheckTask task = new SolutionCheckTask();
+          task.solutionPoints = batches;
+          task.disks = index;
+          task.scorer = scorer;
           task.desiredBin = highestBindex;
-          // task.parent = this;
+          task.binner = this.binner;
           tasks.add(task);
         }
-      }
-      int sumTasks = 0;
-      for (final SolutionCheckTask t : tasks) {
-        log.info(String.format("Task (%,d)", t.solutionPoints.size()));
-        sumTasks += t.solutionPoints.size();
-      }
 
-      log.info(String.format("Divided %,d/%,d points.\n", sumTasks, numPoints));
-      final long start = System.currentTimeMillis();
-      Receiver maxReceiver = null;
-      try {
-        final List<Future<Receiver>> solutions = this.workers.invokeAll(tasks);
-
-        for (final Future<Receiver> future : solutions) {
-          if (future.isCancelled() || !future.isDone()) {
-            log.error("One of the tasks was cancelled! Double-check the code!");
-            return Boolean.FALSE;
-          }
-          try {
-            final Receiver r = future.get();
-            if (r == null) {
-              continue;
+        log.info(String.format("Sharing %,d points between %,d tasks.\n",
+            numPoints, numTasks));
+        final long start = System.currentTimeMillis();
+        try {
+          final List<Future<Receiver>> solutions = this.workers.invokeAll(tasks);
+
+          int maxIndex = -1;
+          for (int t = 0; t < solutions.size(); ++t) {
+            final Future<Receiver> future = solutions.get(t);
+            if (future.isCancelled() || !future.isDone()) {
+              log.error("One of the tasks was cancelled! Double-check the code!");
+              return Boolean.FALSE;
             }
-            if (maxReceiver == null
-                || r.coveringDisks.size() > maxReceiver.coveringDisks.size()) {
-              highestBindex = this.binner.getBindex(r.coveringDisks.size());
-              maxReceiver = r;
+            try {
+              final Receiver r = future.get();
+              if (r == null) {
+                continue;
+              }
+              // Equal scores go to the earliest point, as in a single pass
+              final int rIndex = tasks.get(t).maxIndex;
+              if (maxReceiver == null
+                  || r.coveringDisks.size() > maxReceiver.coveringDisks.size()
+                  || (r.coveringDisks.size() == maxReceiver.coveringDisks
+                      .size() && rIndex < maxIndex)) {
+                highestBindex = this.binner.getBindex(r.coveringDisks.size());
+                maxReceiver = r;
+                maxIndex = rIndex;
+              }
+            } catch (final ExecutionException e) {
+              // TODO Auto-generated catch block
+              e.printStackTrace();
             }
-          } catch (final ExecutionException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
           }
-        }
 
-      } catch (final InterruptedException e) {
-        e.printStackTrace();
-      }
-      final long duration = System.currentTimeMillis() - start;
-      log.info(String.format("Computed %,d comparisons in %,dms.\n",
-          numComparisons, duration));
-
-      if (maxReceiver == null) {
-        if (highestBindex == 0) {
-          break;
+        } catch (final InterruptedException e) {
+          e.printStackTrace();
+        }
+        this.binner.putScored(batches);
+        final long duration = System.currentTimeMillis() - start;
+        log.info(String.format("Computed %,d comparisons in %,dms.\n",
+            numComparisons, duration));
+
+        if (maxReceiver == null) {
+          if (highestBindex == 0) {
+            break;
+          }
+          highestBindex = this.binner.getMaxBindex();
+          continue;
         }
-        highestBindex = this.binner.getMaxBindex();
-        continue;
-      }
 
-      if (highestBindex == 0) {
-        int max = maxReceiver.coveringDisks.size();
-        if (max > this.minRebinValue) {
-          this.binner.rebin(1, max / 2);
+        if (highestBindex == 0) {
+          int max = maxReceiver.coveringDisks.size();
+          if (max > this.minRebinValue) {
+            this.binner.rebin(1, max / 2);
+          }
         }
       }
 
       // Add the newest receiver and remove newly covered points and disks
       this.config.receivers.add(maxReceiver);
 
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : maxReceiver.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(maxReceiver.coveringDisks);
+      if (index != null) {
+        index.removeAll(maxReceiver.coveringDisks);
+      }
+      if (scorer != null) {
+        scorer.removeAll(maxReceiver.coveringDisks);
+      }
+      if (selector != null) {
+        selector.removeAll(maxReceiver.coveringDisks);
       }
-      disks.removeAll(maxReceiver.coveringDisks);
       
 
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
-      }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
 
-      final float capturedDisks = totalCaptureDisks - disks.size();
+      final float capturedDisks = totalCaptureDisks
+          - PairFreeScorer.remaining(disks, scorer);
       final float captureRatio = (capturedDisks / totalCaptureDisks);
       // Debugging stuff
       if (Main.gfxConfig.generateImages) {
@@ -402,7 +425,9 @@ public class BinnedGridExperiment implements Experiment {
     } // End for each receiver
 
     // }
-    disks.clear();
+    if (disks != null) {
+      disks.clear();
+    }
     startingPoints.clear();
     this.binner.clear();
     this.config.transmitters.clear();
@@ -410,25 +435,13 @@ public class BinnedGridExperiment implements Experiment {
     return Boolean.TRUE;
   }
 
-  static boolean checkPointInDisk(final Point2D p, final CaptureDisk d) {
-    final double dist1 = Math.sqrt(Math.pow(p.getX() - d.t1.getX(), 2)
-        + Math.pow(p.getY() - d.t1.getY(), 2));
-    final double dist2 = Math.sqrt(Math.pow(p.getX() - d.t2.getX(), 2)
-        + Math.pow(p.getY() - d.t2.getY(), 2));
-    // This point is too far away from the transmitters for this disk
-    if (dist1 > Main.config.maxRangeMeters
-        && dist2 > Main.config.maxRangeMeters) {
-      return false;
-    }
-    return d.disk.contains(p);
-
-  }
-
-  private static Collection<Point2D> generateSolutionPoints(
+  private static CandidateStore generateSolutionPoints(
       final float xInMeters, final float yInMeters,
       final Collection<Transmitter> transmitters) {
+    final RangeMask inRange = new RangeMask(transmitters,
+        Main.config.maxRangeMeters);
 
-    final Collection<Point2D> solutionPoints = new HashSet<Point2D>();
+    final CandidateStore solutionPoints = new CandidateStore();
     float density = Main.config.getGridDensity();
     float xStep = 1f/density;
     float yStep = 1f/density;
@@ -437,9 +450,8 @@ public class BinnedGridExperiment implements Experiment {
     
     for(float xIndex = 0; xIndex <= xInMeters; xIndex += xStep){
       for(float yIndex = 0; yIndex <= yInMeters; yIndex += yStep){
-        Point2D.Float pnt =  new Point2D.Float(xIndex,yIndex);
-        if (BinnedGridExperiment.checkPointInRange(pnt, transmitters)) {
-          solutionPoints.add(pnt);
+        if (inRange.contains(xIndex, yIndex)) {
+          solutionPoints.add(xIndex, yIndex);
         }
       }
      
@@ -448,25 +460,4 @@ public class BinnedGridExperiment implements Experiment {
     return solutionPoints;
   }
 
-  /**
-   * Returns true if a point is within the transmit radius of at least one
-   * transmitter, else false.
-   * 
-   * @param p
-   *          the point to test.
-   * @return {@code true} if the point is within the transmit radius of at
-   *         leaset one transmitter.
-   */
-  private static boolean checkPointInRange(final Point2D p,
-      final Collection<Transmitter> transmitters) {
-    for (final Transmitter t : transmitters) {
-      final double d = Math.sqrt(Math.pow(p.getX() - t.getX(), 2)
-          + Math.pow(p.getY() - t.getY(), 2));
-      if (d < Main.config.maxRangeMeters) {
-        return true;
-      }
-    }
-    return false;
-  }
-
 }
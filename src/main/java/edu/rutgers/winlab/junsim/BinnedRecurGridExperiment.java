@@ -22,15 +22,12 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -121,13 +118,26 @@ public class BinnedRecurGridExperiment implements Experiment {
         .getLogger(SolutionCheckTask.class);
 
     /**
-     * Set of points this task should check.
+     * Points this task should check, shared with the other tasks.
      */
-    Collection<Point2D> solutionPoints;
+    PointBatches solutionPoints;
+
+    /**
+     * Index of the best point this task found, for breaking ties between
+     * tasks.
+     */
+    int maxIndex = -1;
     /**
-     * Set of capture disks to check for intersections
+     * Set of capture disks to check for intersections, or {@code null} if the
+     * disks were not generated.
      */
-    Collection<CaptureDisk> disks;
+    DiskIndex disks;
+
+    /**
+     * Scores points from the transmitter positions instead, if not
+     * {@code null}. Required if there are no disks.
+     */
+    PairFreeScorer scorer;
 
     /**
      * Reference to the bins for points.
@@ -146,10 +156,9 @@ public class BinnedRecurGridExperiment implements Experiment {
     @Override
     public Receiver call() {
 
-      Point2D maxPoint = null;
-      Collection<CaptureDisk> maxPointDisks = null;
       int maxDisks = 0;
-      final int totalDisks = this.disks.size();
+      final int totalDisks = this.disks != null ? this.disks.size()
+          : this.scorer.getNumRemaining();
       log.info(String.format(
           "Computing %,d points for %,d disks. Desired bin: %d.",
           this.solutionPoints.size(), totalDisks, desiredBin));
@@ -158,35 +167,42 @@ public class BinnedRecurGridExperiment implements Experiment {
        * Determine the number of disks that intersect this point. If the number
        * is the new max, then save it. If there are no intersections, remove it.
        */
-      points: for (final Iterator<Point2D> iter = this.solutionPoints
-          .iterator(); iter.hasNext();) {
-        final Point2D p = iter.next();
-        final Collection<CaptureDisk> pDisk = new HashSet<CaptureDisk>();
-
-        for (final CaptureDisk d : this.disks) {
-          if (BinnedRecurGridExperiment.checkPointInDisk(p, d)) {
-            pDisk.add(d);
+      final int[] batch = new int[2];
+      while (this.solutionPoints.next(batch)) {
+        for (int i = batch[0]; i < batch[1]; ++i) {
+          final float x = this.solutionPoints.getX(i);
+          final float y = this.solutionPoints.getY(i);
+          final int size = this.scorer != null ? this.scorer.count(x, y)
+              : this.disks.count(x, y);
+
+          if (size > 0) {
+            this.solutionPoints.setScore(i, size);
+            int bindex = this.binner.getBindex(size);
+
+            // Add to bin
+            if (size > maxDisks && bindex >= this.desiredBin) {
+              maxDisks = size;
+              this.maxIndex = i;
+            }
           }
-        }
-        int size = pDisk.size();
-
-        if (size > 0) {
-          int bindex = this.binner.put(p, size);
 
-          // Add to bin
-          if (size > maxDisks && bindex >= this.desiredBin) {
-            maxDisks = size;
-            maxPoint = p;
-            maxPointDisks = pDisk;
-          }
         }
-
       }
       final Receiver maxReceiver = new Receiver();
       // Remove the highest point and its solution disks
-      if (maxPoint != null) {
+      if (this.maxIndex >= 0) {
+        final Point2D maxPoint = this.solutionPoints.get(this.maxIndex);
         maxReceiver.setLocation(maxPoint);
-        maxReceiver.coveringDisks = maxPointDisks;
+        // Only the winner's covering disks are materialized
+        maxReceiver.coveringDisks = new ArrayList<CaptureDisk>(maxDisks);
+        // The disks are found the same way the point was scored
+        if (this.scorer != null) {
+          this.scorer.collect(maxPoint.getX(), maxPoint.getY(),
+              maxReceiver.coveringDisks);
+        } else {
+          this.disks.collect(maxPoint.getX(), maxPoint.getY(),
+              maxReceiver.coveringDisks);
+        }
       }
       // No solutions found?
       else {
@@ -200,15 +216,21 @@ public class BinnedRecurGridExperiment implements Experiment {
   public Boolean perform() {
     // final ExperimentRender display = new AnimatedRenderer(Main.gfxConfig);
 
-    final Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
+    final PairFreeScorer scorer = Main.config.pairFreeScoring ? new PairFreeScorer(
+        this.config.transmitters) : null;
+    // Zooming in from the transmitter pairs only needs the disks to draw them
+    final boolean needDisks = scorer == null || Main.gfxConfig.generateImages
+        || Main.config.quadtreeSearch;
+
     // Compute all possible capture disks
-    for (final Transmitter t1 : this.config.transmitters) {
-      for (final Transmitter t2 : this.config.transmitters) {
-        final CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
-        if (someDisk != null) {
-          disks.add(someDisk);
-        }
-      }
+    final CaptureDiskTable disks = needDisks ? new CaptureDiskTable(Main
+        .generateCaptureDisks(this.config.transmitters, this.workers)) : null;
+    final DiskIndex index = needDisks ? new DiskIndex(disks) : null;
+    if (disks == null) {
+      scorer.addUnstoredDisks();
+    } else if (scorer != null) {
+      // The scorer decides coverage, the table follows it for drawing
+      scorer.useStoredDisks();
     }
 
     if (Main.gfxConfig.generateImages) {
@@ -220,8 +242,8 @@ public class BinnedRecurGridExperiment implements Experiment {
       this.render.clear();
 
     }
-    log.info("[" + this.config.trialNumber + "] Generated " + disks.size()
-        + " disks.");
+    log.info("[" + this.config.trialNumber + "] Generated "
+        + PairFreeScorer.remaining(disks, scorer) + " disks.");
 
     float minX = 0;
     float maxX = Main.config.universeWidth;
@@ -231,7 +253,7 @@ public class BinnedRecurGridExperiment implements Experiment {
     float random = Main.config.isRandomized() ? ((Main.config.universeWidth + Main.config.universeHeight) / 2) * 0.01f
         : 0f;
 
-    final int totalCaptureDisks = disks.size();
+    final int totalCaptureDisks = PairFreeScorer.remaining(disks, scorer);
     // final int startingSolutionPoints = startingPoints.size();
     int m = 0;
 
@@ -239,13 +261,10 @@ public class BinnedRecurGridExperiment implements Experiment {
     // final Collection<Receiver> receivers = new LinkedList<Receiver>();
     // Keep track of which collisions are captured so that packet loss
     // probabilities can be quickly calculated
-    final ConcurrentHashMap<Transmitter, HashSet<Transmitter>> capturedCollisions = new ConcurrentHashMap<Transmitter, HashSet<Transmitter>>();
-    // Add an empty set for each transmitter
-    for (final Transmitter txer : this.config.transmitters) {
-      capturedCollisions.put(txer, new HashSet<Transmitter>());
-    }
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
 
-    this.binner = new Binner(this.numBins, 1, disks.size() / 3);
+    this.binner = new Binner(this.numBins, 1, totalCaptureDisks / 3);
 
     int highestBindex = 0;
     // Evaluate any receiver positions we've been given
@@ -262,9 +281,9 @@ public class BinnedRecurGridExperiment implements Experiment {
       // ////////////////////////////////////////////////////////////////////
 
       SolutionCheckTask task = new SolutionCheckTask();
-      task.solutionPoints = new LinkedList<Point2D>();
-      task.solutionPoints.add(rxer);
-      task.disks = disks;
+      task.solutionPoints = new PointBatches(Collections.singleton(rxer), 1);
+      task.disks = index;
+      task.scorer = scorer;
       task.binner = this.binner;
       task.desiredBin = 0;
 
@@ -286,38 +305,27 @@ public class BinnedRecurGridExperiment implements Experiment {
       } catch (final InterruptedException e) {
         e.printStackTrace();
       }
+      this.binner.putScored(task.solutionPoints);
 
       log.info("Receiver score: {}", rxer.coveringDisks.size());
 
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : rxer.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(rxer.coveringDisks);
+      if (index != null) {
+        index.removeAll(rxer.coveringDisks);
       }
-      disks.removeAll(rxer.coveringDisks);
-
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
+      if (scorer != null) {
+        scorer.removeAll(rxer.coveringDisks);
       }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
 
-      final float capturedDisks = totalCaptureDisks - disks.size();
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
+
+      final float capturedDisks = totalCaptureDisks
+          - PairFreeScorer.remaining(disks, scorer);
       final float captureRatio = (capturedDisks / totalCaptureDisks);
       // Debugging stuff
       if (Main.gfxConfig.generateImages) {
@@ -340,92 +348,108 @@ public class BinnedRecurGridExperiment implements Experiment {
       ++m;
     }
 
-    // Finding new positions
-    Collection<Point2D> startingPoints = BinnedRecurGridExperiment
-        .generateSolutionPoints(minX, maxX, minY, maxY, random,
-            this.config.transmitters);
+    // Finding new positions, either by zooming in on grid points or by
+    // searching the quadtree
+    final QuadtreeSearch search = Main.config.quadtreeSearch ? new QuadtreeSearch(
+        disks, index, this.workers) : null;
+    final RangeMask inRange = new RangeMask(this.config.transmitters,
+        Main.config.maxRangeMeters);
+    // A beam zooms in from the whole universe again for each receiver
+    final boolean beam = search == null && Main.config.beamWidth > 1;
+    Collection<Point2D> startingPoints = search != null || beam ? new CandidateStore()
+        : BinnedRecurGridExperiment.generateSolutionPoints(minX, maxX, minY,
+            maxY, random, inRange);
     log.info(String.format("[%d] Generated %,d solution points.\n",
         this.config.trialNumber, startingPoints.size()));
 
     this.binner.set(startingPoints, 1);
 
-    receiverLoop: while (m < this.config.numReceivers && !disks.isEmpty()) {
+    receiverLoop: while (m < this.config.numReceivers && PairFreeScorer.remaining(disks, scorer) > 0) {
 
       log.info("[" + this.config.trialNumber
           + "] Calculating position for receiver " + (m + 1) + ".");
       Receiver maxReceiver = null;
       int previousMaxScore = 0;
-      HashSet<Point2D> alreadyChecked = new HashSet<Point2D>();
-      HashSet<Point2D> maxChecked = new HashSet<Point2D>();
+      CandidateStore alreadyChecked = new CandidateStore();
+      CandidateStore maxChecked = new CandidateStore();
       recursiveLoop: do {
+        if (search != null) {
+          maxReceiver = search.next();
+          if (maxReceiver == null) {
+            break receiverLoop;
+          }
+          log.info(String.format(
+              "Max receiver score: %,d (certified within %,d).",
+              Integer.valueOf(maxReceiver.coveringDisks.size()),
+              Integer.valueOf(maxReceiver.scoreBound
+                  - maxReceiver.coveringDisks.size())));
+          break recursiveLoop;
+        }
+        if (beam) {
+          maxReceiver = this.beamSearch(index, scorer, inRange);
+          if (maxReceiver == null) {
+            break receiverLoop;
+          }
+          log.info("Max receiver score: {}", maxReceiver.coveringDisks.size());
+          break recursiveLoop;
+        }
         this.binner.printBins();
 
         if (maxReceiver != null) {
           previousMaxScore = maxReceiver.coveringDisks.size();
         }
         log.info("Using bin {}", this.binner.getMaxBindex());
-        Set<Point2D> possiblePoints = this.binner.getMaxBin();
+        CandidateStore possiblePoints = this.binner.getMaxBin();
         if (possiblePoints == null) {
           log.info("No more points available in the bins.");
           break;
         }
-        Set<Point2D> thePoints = new HashSet<Point2D>();
-        for (Iterator<Point2D> iter = possiblePoints.iterator(); iter.hasNext();) {
-          Point2D pnt = iter.next();
-          iter.remove();
-          if (alreadyChecked.contains(pnt)) {
-            maxChecked.add(pnt);
+        CandidateStore thePoints = new CandidateStore();
+        for (int i = 0; i < possiblePoints.capacity(); ++i) {
+          if (!possiblePoints.isLive(i)) {
+            continue;
+          }
+          final float x = possiblePoints.getX(i);
+          final float y = possiblePoints.getY(i);
+          if (alreadyChecked.indexOf(x, y) >= 0) {
+            maxChecked.add(x, y);
           } else {
-            thePoints.add(pnt);
+            thePoints.add(x, y);
           }
-
         }
+        possiblePoints.clear();
 
         final int numTasks = Main.config.numThreads;
         final int numPoints = thePoints.size();
-        final int pointsPerTask = (numPoints / numTasks) + 1;
-        final long numComparisons = disks.size() * (long) numPoints;
-
-        final Collection<SolutionCheckTask> tasks = new LinkedList<BinnedRecurGridExperiment.SolutionCheckTask>();
-        final Iterator<Point2D> pointIter = thePoints.iterator();
-        SolutionCheckTask task = new SolutionCheckTask();
-        task.solutionPoints = new LinkedList<Point2D>();
-        task.disks = disks;
-        task.desiredBin = highestBindex;
-        task.binner = this.binner;
-        // task.parent = this;
-        tasks.add(task);
-        for (int i = 0; pointIter.hasNext(); ++i) {
-          Point2D pnt = pointIter.next();
-          task.solutionPoints.add(pnt);
-          alreadyChecked.add(pnt);
-          pointIter.remove();
-          if (i == pointsPerTask) {
-            i = 0;
-            task = new SolutionCheckTask();
-            task.solutionPoints = new LinkedList<Point2D>();
-            task.disks = disks;
-            task.binner = this.binner;
-            task.desiredBin = highestBindex;
-            // task.parent = this;
-            tasks.add(task);
-          }
-        }
-        int sumTasks = 0;
-        for (final SolutionCheckTask t : tasks) {
-          log.info(String.format("Task (%,d)", t.solutionPoints.size()));
-          sumTasks += t.solutionPoints.size();
+        final long numComparisons = PairFreeScorer.remaining(disks, scorer)
+            * (long) numPoints;
+
+        final PointBatches batches = new PointBatches(thePoints, numTasks);
+        alreadyChecked.addAll(thePoints);
+        thePoints.clear();
+        final List<SolutionCheckTask> tasks = new ArrayList<BinnedRecurGridExperiment.SolutionCheckTask>(
+            numTasks);
+        for (int i = 0; i < numTasks; ++i) {
+          final SolutionCheckTask task = new SolutionCheckTask();
+          task.solutionPoints = batches;
+          task.disks = index;
+          task.scorer = scorer;
+          task.desiredBin = highestBindex;
+          task.binner = this.binner;
+          tasks.add(task);
         }
 
-        log.info(String
-            .format("Divided %,d/%,d points.\n", sumTasks, numPoints));
+        log.info(String.format("Sharing %,d points between %,d tasks.\n",
+            numPoints, numTasks));
         final long start = System.currentTimeMillis();
 
         try {
           final List<Future<Receiver>> solutions = this.workers
               .invokeAll(tasks);
 
-          for (final Future<Receiver> future : solutions) {
+          int maxIndex = -1;
+          for (int t = 0; t < solutions.size(); ++t) {
+            final Future<Receiver> future = solutions.get(t);
             if (future.isCancelled() || !future.isDone()) {
               log.error("One of the tasks was cancelled! Double-check the code!");
               return Boolean.FALSE;
@@ -436,10 +460,15 @@ public class BinnedRecurGridExperiment implements Experiment {
                 log.warn("No receiver returned.");
                 continue;
               }
+              // Equal scores go to the earliest point, as in a single pass
+              final int rIndex = tasks.get(t).maxIndex;
               if (maxReceiver == null
-                  || r.coveringDisks.size() > maxReceiver.coveringDisks.size()) {
+                  || r.coveringDisks.size() > maxReceiver.coveringDisks.size()
+                  || (r.coveringDisks.size() == maxReceiver.coveringDisks
+                      .size() && rIndex < maxIndex)) {
                 highestBindex = this.binner.getBindex(r.coveringDisks.size());
                 maxReceiver = r;
+                maxIndex = rIndex;
               }
             } catch (final ExecutionException e) {
               // TODO Auto-generated catch block
@@ -450,6 +479,7 @@ public class BinnedRecurGridExperiment implements Experiment {
         } catch (final InterruptedException e) {
           e.printStackTrace();
         }
+        this.binner.putScored(batches);
         final long duration = System.currentTimeMillis() - start;
         log.info(String.format("Computed %,d comparisons in %,dms.\n",
             numComparisons, duration));
@@ -491,7 +521,7 @@ public class BinnedRecurGridExperiment implements Experiment {
           random = Main.config.isRandomized() ? ((width + height) / 2) * 0.01f
               : 0f;
           this.binner.putAll(this.generateSolutionPoints(minX, maxX, minY,
-              maxY, random, this.config.transmitters),
+              maxY, random, inRange),
               maxReceiver.coveringDisks.size());
         }
 
@@ -511,35 +541,23 @@ public class BinnedRecurGridExperiment implements Experiment {
       // Add the newest receiver and remove newly covered points and disks
       this.config.receivers.add(maxReceiver);
 
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : maxReceiver.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(maxReceiver.coveringDisks);
+      if (index != null) {
+        index.removeAll(maxReceiver.coveringDisks);
       }
-      disks.removeAll(maxReceiver.coveringDisks);
-
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
+      if (scorer != null) {
+        scorer.removeAll(maxReceiver.coveringDisks);
       }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
 
-      final float capturedDisks = totalCaptureDisks - disks.size();
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
+
+      final float capturedDisks = totalCaptureDisks
+          - PairFreeScorer.remaining(disks, scorer);
       final float captureRatio = (capturedDisks / totalCaptureDisks);
       // Debugging stuff
       if (Main.gfxConfig.generateImages) {
@@ -564,7 +582,9 @@ public class BinnedRecurGridExperiment implements Experiment {
     } // End for each receiver
 
     // }
-    disks.clear();
+    if (disks != null) {
+      disks.clear();
+    }
     startingPoints.clear();
     this.binner.clear();
     this.config.transmitters.clear();
@@ -572,30 +592,142 @@ public class BinnedRecurGridExperiment implements Experiment {
     return Boolean.TRUE;
   }
 
-  static boolean checkPointInDisk(final Point2D p, final CaptureDisk d) {
-    final double dist1 = Math.sqrt(Math.pow(p.getX() - d.t1.getX(), 2)
-        + Math.pow(p.getY() - d.t1.getY(), 2));
-    final double dist2 = Math.sqrt(Math.pow(p.getX() - d.t2.getX(), 2)
-        + Math.pow(p.getY() - d.t2.getY(), 2));
-    // This point is too far away from the transmitters for this disk
-    if (dist1 > Main.config.maxRangeMeters
-        && dist2 > Main.config.maxRangeMeters) {
-      return false;
+  /**
+   * Finds the next receiver by zooming in on the best {@code beamWidth} points
+   * of each level at once, rather than only the best one. The windows around
+   * them share a single set of points, so overlapping windows and points
+   * scored at earlier levels are only scored once, and the points of all
+   * windows are scored together on the worker pool.
+   *
+   * @return the best point found, or {@code null} if no point covers any
+   *         disk.
+   */
+  private Receiver beamSearch(final DiskIndex index,
+      final PairFreeScorer scorer, final RangeMask inRange) {
+    final int beamWidth = Main.config.beamWidth;
+    final int numTasks = Main.config.numThreads;
+    final CandidateStore checked = new CandidateStore();
+    // Centers of the windows to zoom in on, the first covering the universe
+    float[] centers = { Main.config.universeWidth / 2,
+        Main.config.universeHeight / 2 };
+    float halfWidth = Main.config.universeWidth / 2;
+    float halfHeight = Main.config.universeHeight / 2;
+    int maxScore = 0;
+    float maxX = 0;
+    float maxY = 0;
+
+    for (int depth = 0; centers.length > 0; ++depth) {
+      final float random = Main.config.isRandomized() ? (halfWidth + halfHeight) * 0.01f
+          : 0f;
+      final CandidateStore levelPoints = new CandidateStore();
+      for (int w = 0; w < centers.length; w += 2) {
+        final CandidateStore windowPoints = BinnedRecurGridExperiment
+            .generateSolutionPoints(centers[w] - halfWidth, centers[w]
+                + halfWidth, centers[w + 1] - halfHeight, centers[w + 1]
+                + halfHeight, random, inRange);
+        for (int i = 0; i < windowPoints.capacity(); ++i) {
+          if (!windowPoints.isLive(i)) {
+            continue;
+          }
+          final float x = windowPoints.getX(i);
+          final float y = windowPoints.getY(i);
+          if (checked.indexOf(x, y) < 0) {
+            levelPoints.add(x, y);
+          }
+        }
+      }
+      if (levelPoints.isEmpty()) {
+        break;
+      }
+
+      final PointBatches batches = new PointBatches(levelPoints, numTasks);
+      final List<SolutionCheckTask> tasks = new ArrayList<BinnedRecurGridExperiment.SolutionCheckTask>(
+          numTasks);
+      for (int i = 0; i < numTasks; ++i) {
+        final SolutionCheckTask task = new SolutionCheckTask();
+        task.solutionPoints = batches;
+        task.disks = index;
+        task.scorer = scorer;
+        task.binner = this.binner;
+        tasks.add(task);
+      }
+      final long start = System.currentTimeMillis();
+      try {
+        for (final Future<Receiver> future : this.workers.invokeAll(tasks)) {
+          future.get();
+        }
+      } catch (final InterruptedException e) {
+        e.printStackTrace();
+      } catch (final ExecutionException e) {
+        e.printStackTrace();
+      }
+
+      // Keep the best points of the level, the earliest of equal scores first
+      final int[] beamIndex = new int[beamWidth];
+      final int[] beamScore = new int[beamWidth];
+      int beamSize = 0;
+      for (int i = 0; i < batches.size(); ++i) {
+        final int score = batches.getScore(i);
+        checked.add(batches.getX(i), batches.getY(i));
+        if (score <= 0 || (beamSize == beamWidth && score <= beamScore[beamSize - 1])) {
+          continue;
+        }
+        int slot = beamSize < beamWidth ? beamSize++ : beamWidth - 1;
+        while (slot > 0 && beamScore[slot - 1] < score) {
+          beamIndex[slot] = beamIndex[slot - 1];
+          beamScore[slot] = beamScore[slot - 1];
+          --slot;
+        }
+        beamIndex[slot] = i;
+        beamScore[slot] = score;
+      }
+      log.info(String.format(
+          "Level %d: scored %,d points in %d windows in %,dms, best %,d.",
+          Integer.valueOf(depth), Integer.valueOf(batches.size()),
+          Integer.valueOf(centers.length / 2),
+          Long.valueOf(System.currentTimeMillis() - start),
+          Integer.valueOf(beamSize > 0 ? beamScore[0] : 0)));
+
+      // Stop once a level no longer improves on the best point
+      if (beamSize == 0 || beamScore[0] <= maxScore) {
+        break;
+      }
+      maxScore = beamScore[0];
+      maxX = batches.getX(beamIndex[0]);
+      maxY = batches.getY(beamIndex[0]);
+
+      centers = new float[2 * beamSize];
+      for (int b = 0; b < beamSize; ++b) {
+        centers[2 * b] = batches.getX(beamIndex[b]);
+        centers[2 * b + 1] = batches.getY(beamIndex[b]);
+      }
+      halfWidth /= 2;
+      halfHeight /= 2;
     }
-    return d.disk.contains(p);
 
+    if (maxScore == 0) {
+      return null;
+    }
+    final Receiver maxReceiver = new Receiver();
+    maxReceiver.setLocation(maxX, maxY);
+    maxReceiver.coveringDisks = new ArrayList<CaptureDisk>(maxScore);
+    if (scorer != null) {
+      scorer.collect(maxX, maxY, maxReceiver.coveringDisks);
+    } else {
+      index.collect(maxX, maxY, maxReceiver.coveringDisks);
+    }
+    return maxReceiver;
   }
 
-  private static Collection<Point2D> generateSolutionPoints(final float minX,
+  private static CandidateStore generateSolutionPoints(final float minX,
       final float maxX, final float minY, final float maxY, final float random,
-      final Collection<Transmitter> transmitters) {
-
+      final RangeMask inRange) {
     log.info(String
         .format(
             "Generating [(%,.2f, %,.2f)x(%,.2f, %,.2f)] dense: %,.1f, random: %,.2f",
             minX, maxX, minY, maxY, Main.config.getGridDensity(), random));
 
-    final Collection<Point2D> solutionPoints = new HashSet<Point2D>();
+    final CandidateStore solutionPoints = new CandidateStore();
     float density = Main.config.getGridDensity();
     float xStep = (maxX - minX) / density;
     float yStep = (maxY - minY) / density;
@@ -616,9 +748,8 @@ public class BinnedRecurGridExperiment implements Experiment {
         if (y < 0 || y > Main.config.universeHeight) {
           continue;
         }
-        Point2D.Float pnt = new Point2D.Float(x, y);
-        if (BinnedRecurGridExperiment.checkPointInRange(pnt, transmitters)) {
-          solutionPoints.add(pnt);
+        if (inRange.contains(x, y)) {
+          solutionPoints.add(x, y);
         }
       }
 
@@ -627,25 +758,4 @@ public class BinnedRecurGridExperiment implements Experiment {
     return solutionPoints;
   }
 
-  /**
-   * Returns true if a point is within the transmit radius of at least one
-   * transmitter, else false.
-   * 
-   * @param p
-   *          the point to test.
-   * @return {@code true} if the point is within the transmit radius of at
-   *         leaset one transmitter.
-   */
-  private static boolean checkPointInRange(final Point2D p,
-      final Collection<Transmitter> transmitters) {
-    for (final Transmitter t : transmitters) {
-      final double d = Math.sqrt(Math.pow(p.getX() - t.getX(), 2)
-          + Math.pow(p.getY() - t.getY(), 2));
-      if (d < Main.config.maxRangeMeters) {
-        return true;
-      }
-    }
-    return false;
-  }
-
 }
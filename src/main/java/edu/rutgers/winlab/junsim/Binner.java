@@ -19,23 +19,28 @@ package edu.rutgers.winlab.junsim;
 
 import java.awt.geom.Point2D;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Groups solution points into bins by score. Each bin is a
+ * {@link CandidateStore}, and each point's score is kept in its slot.
+ * <p>
+ * Not thread-safe: scoring tasks record their scores in their
+ * {@link PointBatches}, and the results are binned with
+ * {@link #putScored(PointBatches)} once the tasks are done.
+ * </p>
+ * 
  * @author Robert Moore
  */
 public class Binner {
 
   private static final Logger log = LoggerFactory.getLogger(Binner.class);
 
-  private final Set<Point2D>[] bins;
+  private final CandidateStore[] bins;
   
   private final int[] binMins;
 
@@ -53,10 +58,9 @@ public class Binner {
       this.binMins[i] = binStart;
     }
     
-    this.bins = new Set[numBins];
+    this.bins = new CandidateStore[numBins];
     for (int i = 0; i < this.bins.length; ++i) {
-      this.bins[i] = Collections
-          .newSetFromMap(new ConcurrentHashMap<Point2D, Boolean>());
+      this.bins[i] = new CandidateStore();
     }
   }
   
@@ -72,23 +76,66 @@ public class Binner {
   }
 
   public int put(Point2D point, int score) {
-    int bindex = getBindex(score);
-    this.bins[bindex].add(point);
+    return this.put((float) point.getX(), (float) point.getY(), score);
+  }
+
+  /**
+   * Adds a point to the bin for its score.
+   * 
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param score
+   *          the score of the point.
+   * @return the index of the bin it went into.
+   */
+  public int put(final float x, final float y, final int score) {
+    final int bindex = this.getBindex(score);
+    final CandidateStore bin = this.bins[bindex];
+    bin.add(x, y);
+    bin.setScore(bin.indexOf(x, y), score);
     return bindex;
   }
+
+  /**
+   * Bins every point that was given a score in a pass, in the order of the
+   * points.
+   * 
+   * @param batches
+   *          the points of the finished pass.
+   */
+  public void putScored(final PointBatches batches) {
+    for (int i = 0; i < batches.size(); ++i) {
+      final int score = batches.getScore(i);
+      if (score >= 0) {
+        this.put(batches.getX(i), batches.getY(i), score);
+      }
+    }
+  }
   
   public int putAll(Collection<Point2D> points, int score){
     int bindex = getBindex(score);
-    this.bins[bindex].addAll(points);
+    if (points instanceof CandidateStore) {
+      final CandidateStore store = (CandidateStore) points;
+      for (int i = 0; i < store.capacity(); ++i) {
+        if (store.isLive(i)) {
+          this.put(store.getX(i), store.getY(i), score);
+        }
+      }
+    } else {
+      for (final Point2D point : points) {
+        this.put(point, score);
+      }
+    }
     return bindex;
   }
 
   public void set(Collection<Point2D> points, int score) {
-    int bindex = getBindex(score);
-    this.bins[bindex].addAll(points);
+    this.putAll(points, score);
   }
 
-  public Set<Point2D> getMaxBin() {
+  public CandidateStore getMaxBin() {
     for (int i = this.bins.length - 1; i >= 0; --i) {
       if (!this.bins[i].isEmpty()) {
         return this.bins[i];
@@ -170,7 +217,7 @@ public class Binner {
   }
   
   public void clear(){
-    for(Set<Point2D> bin : this.bins){
+    for(CandidateStore bin : this.bins){
       bin.clear();
     }
   }
@@ -182,7 +229,7 @@ public class Binner {
    */
   public List<Collection<Point2D>> getBins(){
     LinkedList<Collection<Point2D>> returnedList = new LinkedList<Collection<Point2D>>();
-    for(Set<Point2D> set : this.bins){
+    for(CandidateStore set : this.bins){
       returnedList.add(set);
     }
     return returnedList;
@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.awt.geom.Point2D;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact set of candidate (solution) points. Coordinates are stored in
+ * parallel float arrays, duplicates are detected with an open-addressing hash
+ * table of point indices, and each point has an int slot for its score, so a
+ * point costs a few dozen bytes instead of a boxed {@code Point2D.Float} plus
+ * a hash set entry.
+ * <p>
+ * Points are kept in the order they were first added. The store is also a
+ * {@code Collection} of its points, so it can be handed to code that expects
+ * one; iterating creates a new {@code Point2D.Float} for each point, and two
+ * points are the same if their float coordinates are equal.
+ * </p>
+ * <p>
+ * A store can also be given a lattice spacing, in which case two points are
+ * the same if they snap to the same lattice point. The first point added for a
+ * lattice point is kept with its original coordinates, so near-coincident
+ * points (such as intersections computed twice with different rounding) are
+ * merged without moving the point that is kept.
+ * </p>
+ * <p>
+ * The store is not thread-safe.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class CandidateStore extends AbstractCollection<Point2D> {
+
+  /**
+   * Smallest number of point slots to allocate.
+   */
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * Largest number of point slots, so that the hash table (at least twice as
+   * long) still fits in an int-indexed array.
+   */
+  private static final int MAX_CAPACITY = 1 << 29;
+
+  /**
+   * X-coordinate of each point.
+   */
+  private float[] xs;
+
+  /**
+   * Y-coordinate of each point.
+   */
+  private float[] ys;
+
+  /**
+   * Score of each point.
+   */
+  private int[] scores;
+
+  /**
+   * Whether each point has been removed.
+   */
+  private boolean[] removed;
+
+  /**
+   * Number of point slots used, including removed points.
+   */
+  private int used = 0;
+
+  /**
+   * Number of points not removed.
+   */
+  private int live = 0;
+
+  /**
+   * Open-addressing hash table of point index + 1 (0 is an empty bucket). Its
+   * length is a power of two, at least twice the number of point slots.
+   */
+  private int[] table;
+
+  /**
+   * Lattice spacing that points are snapped to before comparing them, or 0 to
+   * compare exact coordinates.
+   */
+  private final float epsilon;
+
+  /**
+   * Inverse of {@code epsilon}.
+   */
+  private final double inverse;
+
+  /**
+   * Number of points that were not added because they were already stored.
+   */
+  private long duplicates = 0;
+
+  /**
+   * Creates a new, empty store.
+   */
+  public CandidateStore() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Creates a new, empty store with room for some number of points.
+   *
+   * @param capacity
+   *          the number of points to allocate space for.
+   */
+  public CandidateStore(final int capacity) {
+    this(capacity, 0f);
+  }
+
+  /**
+   * Creates a new, empty store that merges points closer than a lattice
+   * spacing.
+   *
+   * @param capacity
+   *          the number of points to allocate space for.
+   * @param epsilon
+   *          the lattice spacing, or 0 to only merge identical points.
+   */
+  public CandidateStore(final int capacity, final float epsilon) {
+    super();
+    this.epsilon = epsilon > 0 ? epsilon : 0f;
+    this.inverse = epsilon > 0 ? 1.0 / epsilon : 0;
+    this.allocate(Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, capacity)));
+  }
+
+  private void allocate(final int capacity) {
+    this.xs = new float[capacity];
+    this.ys = new float[capacity];
+    this.scores = new int[capacity];
+    this.removed = new boolean[capacity];
+    this.table = new int[Integer.highestOneBit(capacity - 1) << 2];
+    this.used = 0;
+    this.live = 0;
+  }
+
+  private static int hash(final long x, final long y) {
+    final long k = x * 31 + y;
+    int h = (int) (k ^ (k >>> 32));
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+
+  /**
+   * Snaps a coordinate to the lattice, giving the key it is compared by: the
+   * lattice index, or the bits of the coordinate if there is no lattice.
+   * Adding 0 turns -0 into 0, so both hash the same. The lattice index is kept
+   * as a long, since a float would merge indices above 2^24.
+   */
+  private long snap(final float v) {
+    if (this.epsilon == 0) {
+      return Float.floatToIntBits(v + 0f);
+    }
+    return (long) Math.rint(v * this.inverse);
+  }
+
+  /**
+   * Finds the bucket holding a point, or the empty bucket where it would go.
+   * The coordinates must already be snapped.
+   */
+  private int bucket(final long x, final long y) {
+    final int mask = this.table.length - 1;
+    int b = CandidateStore.hash(x, y) & mask;
+    while (this.table[b] != 0) {
+      final int i = this.table[b] - 1;
+      if (this.snap(this.xs[i]) == x && this.snap(this.ys[i]) == y) {
+        break;
+      }
+      b = (b + 1) & mask;
+    }
+    return b;
+  }
+
+  /**
+   * Adds a point, unless it (or a point on the same lattice point) is already
+   * in the store.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @return {@code true} if the point was added.
+   */
+  public boolean add(final float x, final float y) {
+    final float px = x + 0f;
+    final float py = y + 0f;
+    int b = this.bucket(this.snap(px), this.snap(py));
+    if (this.table[b] != 0) {
+      final int i = this.table[b] - 1;
+      if (!this.removed[i]) {
+        ++this.duplicates;
+        return false;
+      }
+      // Revive the point in its old slot
+      this.removed[i] = false;
+      this.scores[i] = 0;
+      ++this.live;
+      return true;
+    }
+    if (this.used == this.xs.length) {
+      this.resize();
+      b = this.bucket(this.snap(px), this.snap(py));
+    }
+    final int i = this.used++;
+    this.xs[i] = px;
+    this.ys[i] = py;
+    this.scores[i] = 0;
+    this.removed[i] = false;
+    this.table[b] = i + 1;
+    ++this.live;
+    return true;
+  }
+
+  @Override
+  public boolean add(final Point2D point) {
+    return this.add((float) point.getX(), (float) point.getY());
+  }
+
+  /**
+   * Makes room for more points. Removed points are dropped first; the array is
+   * only grown if that does not free up enough space.
+   */
+  private void resize() {
+    final float[] oldXs = this.xs;
+    final float[] oldYs = this.ys;
+    final int[] oldScores = this.scores;
+    final boolean[] oldRemoved = this.removed;
+    final int oldUsed = this.used;
+    if (this.live * 2 > oldXs.length && oldXs.length >= MAX_CAPACITY) {
+      throw new IllegalStateException(String.format(
+          "Cannot store more than %,d candidate points.",
+          Integer.valueOf(MAX_CAPACITY)));
+    }
+    final int capacity = this.live * 2 <= oldXs.length ? oldXs.length
+        : oldXs.length * 2;
+    this.allocate(capacity);
+    for (int i = 0; i < oldUsed; ++i) {
+      if (!oldRemoved[i]) {
+        final int b = this.bucket(this.snap(oldXs[i]), this.snap(oldYs[i]));
+        this.xs[this.used] = oldXs[i];
+        this.ys[this.used] = oldYs[i];
+        this.scores[this.used] = oldScores[i];
+        this.table[b] = ++this.used;
+      }
+    }
+    this.live = this.used;
+  }
+
+  /**
+   * Finds the index of a point.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @return the index of the point, or -1 if it is not in the store.
+   */
+  public int indexOf(final float x, final float y) {
+    final int b = this.bucket(this.snap(x), this.snap(y));
+    if (this.table[b] == 0) {
+      return -1;
+    }
+    final int i = this.table[b] - 1;
+    return this.removed[i] ? -1 : i;
+  }
+
+  private int indexOf(final Object o) {
+    if (!(o instanceof Point2D)) {
+      return -1;
+    }
+    final Point2D p = (Point2D) o;
+    return this.indexOf((float) p.getX(), (float) p.getY());
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    return this.indexOf(o) >= 0;
+  }
+
+  @Override
+  public boolean remove(final Object o) {
+    final int i = this.indexOf(o);
+    if (i < 0) {
+      return false;
+    }
+    this.removeAt(i);
+    return true;
+  }
+
+  /**
+   * Removes the point at an index.
+   *
+   * @param index
+   *          the index of the point.
+   */
+  public void removeAt(final int index) {
+    if (this.removed[index]) {
+      return;
+    }
+    this.removed[index] = true;
+    if (--this.live == 0) {
+      this.clear();
+    }
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(this.table, 0);
+    this.used = 0;
+    this.live = 0;
+  }
+
+  /**
+   * Returns {@code true} if the point at the index has not been removed.
+   *
+   * @param index
+   *          the index of the point.
+   * @return {@code true} if the point is still in the store.
+   */
+  public boolean isLive(final int index) {
+    return index < this.used && !this.removed[index];
+  }
+
+  /**
+   * The x-coordinate of a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @return its x-coordinate.
+   */
+  public float getX(final int index) {
+    return this.xs[index];
+  }
+
+  /**
+   * The y-coordinate of a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @return its y-coordinate.
+   */
+  public float getY(final int index) {
+    return this.ys[index];
+  }
+
+  /**
+   * The last score recorded for a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @return its score.
+   */
+  public int getScore(final int index) {
+    return this.scores[index];
+  }
+
+  /**
+   * Records the score of a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @param score
+   *          its score.
+   */
+  public void setScore(final int index, final int score) {
+    this.scores[index] = score;
+  }
+
+  /**
+   * The number of point slots in use, including removed points. Valid point
+   * indices are {@code [0, capacity())}.
+   *
+   * @return the total number of point indices.
+   */
+  public int capacity() {
+    return this.used;
+  }
+
+  /**
+   * The number of points that were not added because they (or a point on the
+   * same lattice point) were already in the store.
+   *
+   * @return the number of duplicate points.
+   */
+  public long getDuplicates() {
+    return this.duplicates;
+  }
+
+  @Override
+  public int size() {
+    return this.live;
+  }
+
+  @Override
+  public Iterator<Point2D> iterator() {
+    return new Iterator<Point2D>() {
+      private int next = this.skip(0);
+
+      private int last = -1;
+
+      private int skip(final int from) {
+        int i = from;
+        while (i < CandidateStore.this.used && CandidateStore.this.removed[i]) {
+          ++i;
+        }
+        return i;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return this.next < CandidateStore.this.used;
+      }
+
+      @Override
+      public Point2D next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        this.last = this.next;
+        this.next = this.skip(this.next + 1);
+        return new Point2D.Float(CandidateStore.this.xs[this.last],
+            CandidateStore.this.ys[this.last]);
+      }
+
+      @Override
+      public void remove() {
+        if (this.last < 0) {
+          throw new IllegalStateException();
+        }
+        CandidateStore.this.removeAt(this.last);
+        this.last = -1;
+      }
+    };
+  }
+}
@@ -37,6 +37,10 @@ public class CaptureDisk implements Drawable {
    * The transmitter that collides.
    */
   public Transmitter t2;
+  /**
+   * Position of this disk within its {@link CaptureDiskTable}.
+   */
+  int index = -1;
 
   @Override
   public boolean equals(Object o) {
@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact, index-based table of capture disks. The geometry of each disk is
+ * stored in parallel primitive arrays so that scoring a point is a linear scan
+ * over arrays rather than a walk over {@code CaptureDisk}, {@code Circle} and
+ * {@code Transmitter} objects.
+ * <p>
+ * Every disk keeps the same index for the lifetime of the table. Removed disks
+ * are dropped from a dense list of live indices, which is what scans iterate
+ * over. The table is also a {@code Collection} of the remaining disks, so it
+ * can be handed to the renderer or any other code that expects one.
+ * </p>
+ * <p>
+ * Queries may run concurrently, but removals must not overlap with them.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class CaptureDiskTable extends AbstractCollection<CaptureDisk> {
+
+  /**
+   * The disk objects, by index.
+   */
+  final CaptureDisk[] disks;
+
+  /**
+   * X-coordinate of each disk's center.
+   */
+  final float[] centerX;
+
+  /**
+   * Y-coordinate of each disk's center.
+   */
+  final float[] centerY;
+
+  /**
+   * Radius of each disk.
+   */
+  final float[] radius;
+
+  /**
+   * Square of the radius out to which each disk covers points (see
+   * {@link Geometry#coverRadius(double)}).
+   */
+  final double[] radiusSq;
+
+  /**
+   * Lowest x-coordinate each disk can cover. The bounds of a disk are the
+   * intersection of its bounding box (out to its cover radius) and the
+   * bounding box of its transmitters' ranges, rounded outwards.
+   */
+  final float[] minX;
+
+  /**
+   * Highest x-coordinate each disk can cover.
+   */
+  final float[] maxX;
+
+  /**
+   * Lowest y-coordinate each disk can cover.
+   */
+  final float[] minY;
+
+  /**
+   * Highest y-coordinate each disk can cover.
+   */
+  final float[] maxY;
+
+  /**
+   * Index of the captured transmitter (t1) of each disk.
+   */
+  final int[] t1;
+
+  /**
+   * Index of the colliding transmitter (t2) of each disk.
+   */
+  final int[] t2;
+
+  /**
+   * X-coordinate of each transmitter, by transmitter index.
+   */
+  final float[] txX;
+
+  /**
+   * Y-coordinate of each transmitter, by transmitter index.
+   */
+  final float[] txY;
+
+  /**
+   * The transmitters, by transmitter index.
+   */
+  final Transmitter[] txers;
+
+  /**
+   * Indices of the disks that have not been removed, in their original order.
+   */
+  private final int[] live;
+
+  /**
+   * Number of valid entries in {@code live}.
+   */
+  private int liveCount;
+
+  /**
+   * Whether each disk has been removed.
+   */
+  private final boolean[] removed;
+
+  /**
+   * Creates a new table containing the provided disks.
+   *
+   * @param source
+   *          the capture disks to store.
+   */
+  public CaptureDiskTable(final Collection<CaptureDisk> source) {
+    super();
+    final int size = source.size();
+    this.disks = new CaptureDisk[size];
+    this.centerX = new float[size];
+    this.centerY = new float[size];
+    this.radius = new float[size];
+    this.radiusSq = new double[size];
+    this.minX = new float[size];
+    this.maxX = new float[size];
+    this.minY = new float[size];
+    this.maxY = new float[size];
+    this.t1 = new int[size];
+    this.t2 = new int[size];
+    this.live = new int[size];
+    this.removed = new boolean[size];
+
+    final float range = Main.config.maxRangeMeters;
+    final Map<Transmitter, Integer> txIndex = new IdentityHashMap<Transmitter, Integer>();
+    int i = 0;
+    for (final CaptureDisk d : source) {
+      d.index = i;
+      this.disks[i] = d;
+      this.centerX[i] = d.disk.center.x;
+      this.centerY[i] = d.disk.center.y;
+      this.radius[i] = d.disk.radius;
+      final double coverRadius = Geometry.coverRadius(d.disk.radius);
+      this.radiusSq[i] = coverRadius * coverRadius;
+      this.minX[i] = CaptureDiskTable.floor(Math.max(d.disk.center.x
+          - coverRadius, (double) Math.min(d.t1.x, d.t2.x) - range));
+      this.maxX[i] = CaptureDiskTable.ceil(Math.min(d.disk.center.x
+          + coverRadius, (double) Math.max(d.t1.x, d.t2.x) + range));
+      this.minY[i] = CaptureDiskTable.floor(Math.max(d.disk.center.y
+          - coverRadius, (double) Math.min(d.t1.y, d.t2.y) - range));
+      this.maxY[i] = CaptureDiskTable.ceil(Math.min(d.disk.center.y
+          + coverRadius, (double) Math.max(d.t1.y, d.t2.y) + range));
+      this.t1[i] = CaptureDiskTable.indexOf(d.t1, txIndex);
+      this.t2[i] = CaptureDiskTable.indexOf(d.t2, txIndex);
+      this.live[i] = i;
+      ++i;
+    }
+    this.liveCount = size;
+
+    this.txers = new Transmitter[txIndex.size()];
+    this.txX = new float[this.txers.length];
+    this.txY = new float[this.txers.length];
+    for (final Map.Entry<Transmitter, Integer> entry : txIndex.entrySet()) {
+      final int t = entry.getValue().intValue();
+      this.txers[t] = entry.getKey();
+      this.txX[t] = entry.getKey().x;
+      this.txY[t] = entry.getKey().y;
+    }
+  }
+
+  /**
+   * The highest float no greater than a value.
+   */
+  private static float floor(final double value) {
+    final float f = (float) value;
+    return f > value ? Math.nextAfter(f, Double.NEGATIVE_INFINITY) : f;
+  }
+
+  /**
+   * The lowest float no less than a value.
+   */
+  private static float ceil(final double value) {
+    final float f = (float) value;
+    return f < value ? Math.nextUp(f) : f;
+  }
+
+  private static int indexOf(final Transmitter txer,
+      final Map<Transmitter, Integer> txIndex) {
+    Integer index = txIndex.get(txer);
+    if (index == null) {
+      index = Integer.valueOf(txIndex.size());
+      txIndex.put(txer, index);
+    }
+    return index.intValue();
+  }
+
+  /**
+   * Determines whether a point is covered by a disk: it must lie within the
+   * disk and within range of either of the disk's transmitters.
+   *
+   * @param index
+   *          the index of the disk.
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @return {@code true} if the disk covers the point.
+   */
+  boolean covers(final int index, final double x, final double y) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    return Geometry.covers(this, index, x, y, rangeSq);
+  }
+
+  /**
+   * Counts the remaining disks that cover a point.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @return the number of covering disks.
+   */
+  public int count(final double x, final double y) {
+    return Geometry.coveringDisks(this, this.live, this.liveCount, x, y, null);
+  }
+
+  /**
+   * Finds the indices of the remaining disks that cover a point.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param covering
+   *          buffer that receives the indices of the covering disks. Must hold
+   *          at least {@code size()} values.
+   * @return the number of covering disks.
+   */
+  public int collect(final double x, final double y, final int[] covering) {
+    return Geometry.coveringDisks(this, this.live, this.liveCount, x, y,
+        covering);
+  }
+
+  /**
+   * Adds every remaining disk that covers a point to a collection.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param covering
+   *          the collection to add the covering disks to.
+   * @return the number of covering disks.
+   */
+  public int collect(final double x, final double y,
+      final Collection<CaptureDisk> covering) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    int count = 0;
+    for (int i = 0; i < this.liveCount; ++i) {
+      final int index = this.live[i];
+      if (Geometry.covers(this, index, x, y, rangeSq)) {
+        covering.add(this.disks[index]);
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns {@code true} if the disk at the index has not been removed.
+   *
+   * @param index
+   *          the index of the disk.
+   * @return {@code true} if the disk is still in the table.
+   */
+  public boolean isLive(final int index) {
+    return !this.removed[index];
+  }
+
+  /**
+   * The number of disks the table was created with, including removed ones.
+   * Valid disk indices are {@code [0, capacity())}.
+   *
+   * @return the total number of disk indices.
+   */
+  public int capacity() {
+    return this.disks.length;
+  }
+
+  @Override
+  public int size() {
+    return this.liveCount;
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    if (!(o instanceof CaptureDisk)) {
+      return false;
+    }
+    final int index = ((CaptureDisk) o).index;
+    return index >= 0 && index < this.disks.length
+        && this.disks[index] == o && !this.removed[index];
+  }
+
+  @Override
+  public boolean remove(final Object o) {
+    if (!this.contains(o)) {
+      return false;
+    }
+    this.removed[((CaptureDisk) o).index] = true;
+    this.compact();
+    return true;
+  }
+
+  @Override
+  public boolean removeAll(final Collection<?> c) {
+    boolean changed = false;
+    for (final Object o : c) {
+      if (this.contains(o)) {
+        this.removed[((CaptureDisk) o).index] = true;
+        changed = true;
+      }
+    }
+    if (changed) {
+      this.compact();
+    }
+    return changed;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < this.liveCount; ++i) {
+      this.removed[this.live[i]] = true;
+    }
+    this.liveCount = 0;
+  }
+
+  /**
+   * Drops removed disks from the list of live indices, preserving order.
+   */
+  private void compact() {
+    int kept = 0;
+    for (int i = 0; i < this.liveCount; ++i) {
+      if (!this.removed[this.live[i]]) {
+        this.live[kept++] = this.live[i];
+      }
+    }
+    this.liveCount = kept;
+  }
+
+  @Override
+  public Iterator<CaptureDisk> iterator() {
+    return new Iterator<CaptureDisk>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < CaptureDiskTable.this.liveCount;
+      }
+
+      @Override
+      public CaptureDisk next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return CaptureDiskTable.this.disks[CaptureDiskTable.this.live[this.next++]];
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "Use CaptureDiskTable.remove(Object) instead.");
+      }
+    };
+  }
+}
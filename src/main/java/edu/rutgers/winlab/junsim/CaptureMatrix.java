@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Keeps track of which collisions are captured by the receivers placed so far,
+ * so that contention statistics can be updated as each receiver is added.
+ * <p>
+ * Each transmitter is given a dense id, and the captured collisions are kept
+ * as a square bit matrix: bit {@code (t1, t2)} is set once a receiver covers
+ * the capture disk of {@code (t1, t2)}. The contention of a transmitter is the
+ * number of other transmitters whose collisions with it are not captured. A
+ * count of the transmitters at each contention is updated along with the
+ * matrix, so the minimum, maximum and mean contention only cost time for the
+ * transmitters whose contention changed.
+ * </p>
+ * <p>
+ * The matrix is not thread-safe.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class CaptureMatrix {
+
+  /**
+   * Number of transmitters.
+   */
+  private final int size;
+
+  /**
+   * Number of words in each row of the matrix.
+   */
+  private final int rowWords;
+
+  /**
+   * Captured collisions, row by row, 64 to a word.
+   */
+  private final long[] captured;
+
+  /**
+   * Contention of each transmitter.
+   */
+  private final int[] contention;
+
+  /**
+   * Number of transmitters at each contention.
+   */
+  private final int[] numAt;
+
+  /**
+   * Sum of the contention of every transmitter.
+   */
+  private long totalContention;
+
+  /**
+   * Lowest contention of any transmitter.
+   */
+  private int minContention;
+
+  /**
+   * Highest contention of any transmitter.
+   */
+  private int maxContention;
+
+  /**
+   * Creates a new matrix with no captured collisions, and assigns each
+   * transmitter its id.
+   *
+   * @param transmitters
+   *          the transmitters.
+   */
+  public CaptureMatrix(final Collection<Transmitter> transmitters) {
+    super();
+    this.size = transmitters.size();
+    this.rowWords = (this.size + 63) >>> 6;
+    this.captured = new long[this.size * this.rowWords];
+    int id = 0;
+    for (final Transmitter txer : transmitters) {
+      txer.id = id++;
+    }
+    // Every transmitter starts in contention with all of the others
+    final int initial = Math.max(0, this.size - 1);
+    this.contention = new int[this.size];
+    Arrays.fill(this.contention, initial);
+    this.numAt = new int[initial + 1];
+    this.numAt[initial] = this.size;
+    this.totalContention = (long) initial * this.size;
+    this.minContention = initial;
+    this.maxContention = initial;
+  }
+
+  /**
+   * Records that the collision of a capture disk is captured, if it was not
+   * already.
+   *
+   * @param disk
+   *          the covered capture disk.
+   * @return {@code true} if the collision was not captured before.
+   */
+  public boolean capture(final CaptureDisk disk) {
+    final int t1 = disk.t1.id;
+    final int t2 = disk.t2.id;
+    final int word = t1 * this.rowWords + (t2 >>> 6);
+    final long bit = 1L << t2;
+    if ((this.captured[word] & bit) != 0) {
+      return false;
+    }
+    this.captured[word] |= bit;
+    disk.t1.addCoveredDisk(disk);
+
+    final int before = this.contention[t1]--;
+    --this.totalContention;
+    --this.numAt[before];
+    ++this.numAt[before - 1];
+    if (before - 1 < this.minContention) {
+      this.minContention = before - 1;
+    }
+    // Contention only drops, so the maximum is found by walking down
+    while (this.maxContention > 0 && this.numAt[this.maxContention] == 0) {
+      --this.maxContention;
+    }
+    return true;
+  }
+
+  /**
+   * Records the collisions of every covered capture disk.
+   *
+   * @param disks
+   *          the covered capture disks.
+   */
+  public void captureAll(final Collection<CaptureDisk> disks) {
+    for (final CaptureDisk disk : disks) {
+      this.capture(disk);
+    }
+  }
+
+  /**
+   * Determines whether a collision is captured.
+   *
+   * @param t1
+   *          the transmitter whose packet is received.
+   * @param t2
+   *          the colliding transmitter.
+   * @return {@code true} if a receiver captures the packet of {@code t1} when
+   *         it collides with {@code t2}.
+   */
+  public boolean isCaptured(final Transmitter t1, final Transmitter t2) {
+    return (this.captured[t1.id * this.rowWords + (t2.id >>> 6)] & (1L << t2.id)) != 0;
+  }
+
+  /**
+   * The number of other transmitters whose collisions with a transmitter are
+   * not captured.
+   *
+   * @param txer
+   *          the transmitter.
+   * @return the contention of the transmitter.
+   */
+  public int getContention(final Transmitter txer) {
+    return this.contention[txer.id];
+  }
+
+  /**
+   * The lowest contention of any transmitter.
+   *
+   * @return the minimum contention.
+   */
+  public int getMinContention() {
+    return this.minContention;
+  }
+
+  /**
+   * The highest contention of any transmitter.
+   *
+   * @return the maximum contention.
+   */
+  public int getMaxContention() {
+    return this.maxContention;
+  }
+
+  /**
+   * The mean contention of the transmitters.
+   *
+   * @return the mean contention, or 0 if there are no transmitters.
+   */
+  public float getMeanContention() {
+    return this.size == 0 ? 0 : (float) ((double) this.totalContention / this.size);
+  }
+}
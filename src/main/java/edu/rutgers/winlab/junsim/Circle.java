@@ -22,15 +22,42 @@ import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Robert Moore
  * 
  */
 public class Circle implements Drawable {
-  static int nextId = 0;
-  private static synchronized int getId(){
-    return nextId++;
+  /**
+   * Number of identifiers a thread reserves at a time.
+   */
+  private static final int ID_BLOCK_SIZE = 1024;
+
+  /**
+   * Start of the next unreserved block of identifiers.
+   */
+  private static final AtomicInteger nextIdBlock = new AtomicInteger(0);
+
+  /**
+   * The next identifier and the end of the reserved block for each thread.
+   * Circles are created by many threads at once while generating capture
+   * disks, so each thread only touches the shared counter once per block.
+   */
+  private static final ThreadLocal<int[]> idBlock = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[] { 0, 0 };
+    }
+  };
+
+  private static int getId() {
+    final int[] block = idBlock.get();
+    if (block[0] == block[1]) {
+      block[0] = nextIdBlock.getAndAdd(ID_BLOCK_SIZE);
+      block[1] = block[0] + ID_BLOCK_SIZE;
+    }
+    return block[0]++;
   }
   
   public float radius = 0f;
@@ -73,21 +100,13 @@ public class Circle implements Drawable {
   }
 
   public boolean contains(Point2D p) {
-    // Quick bounding-box check
-    if(this.center.x-this.radius > p.getX() || this.center.x+this.radius < p.getX() ||
-        this.center.y-this.radius > p.getY() || this.center.y+this.radius < p.getY()){
-      return false;
-    }
-    
-    float dist = (float) Math.sqrt(Math.pow(p.getX() - this.center.getX(), 2)
-        + Math.pow(p.getY() - this.center.getY(), 2));
-    return this.radius >= dist;
+    return Geometry.circleContains(this.center.x, this.center.y, this.radius,
+        p.getX(), p.getY());
   }
 
   public boolean intersects(Circle c) {
-    double dist = Math.sqrt(Math.pow(this.center.getX() - c.center.getX(), 2)
-        + Math.pow(this.center.getY() - c.center.getY(), 2));
-    return dist <= (this.radius + c.radius);
+    return Geometry.circlesIntersect(this.center.x, this.center.y,
+        this.radius, c.center.x, c.center.y, c.radius);
   }
 
   public double getCenterX() {
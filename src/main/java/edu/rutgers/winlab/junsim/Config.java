@@ -96,7 +96,8 @@ public class Config {
 
   /**
    * Type of experiment to run.
-   * "basic", "binned", "grid", "recursive", "fair"
+   * "basic", "binned", "grid", "recursive", "fair", "density", "sweep",
+   * "annealing"
    */
   String experimentType = "basic";
   
@@ -137,6 +138,70 @@ public class Config {
     */
    int densityRoot = 3;
 
+  /**
+   * How receivers are chosen from the solution points in the "basic",
+   * "binned" and "grid" experiments. "greedy" rescores every point for each
+   * receiver, "lazy" only rescores points whose previous score could still
+   * win, and "incidence" scores every point once and then updates the scores
+   * as disks are removed. "stream" ("basic" experiment only) generates the
+   * points again for each receiver and scores them as they are generated,
+   * without storing them. "raster" ("grid" experiment only) keeps the depth of
+   * every lattice point in a buffer that disks are stamped into and out of.
+   */
+  String selectionMode = "greedy";
+
+  /**
+   * Whether the "basic" experiment should stop scoring a point as soon as it
+   * can no longer beat the best score found by any worker.
+   */
+  boolean branchAndBound = false;
+
+  /**
+   * Whether the "grid", "recursive" and "fair" experiments should score points
+   * directly from the transmitter positions (see {@link PairFreeScorer})
+   * instead of testing each capture disk. Covered disks are then tracked as
+   * transmitter pairs, and the disks themselves are only generated if they are
+   * drawn, or needed by the selection mode or quadtree search.
+   */
+  boolean pairFreeScoring = false;
+
+  /**
+   * Spacing of the lattice that intersection points are snapped to when
+   * removing duplicates in the "basic" and "binned" experiments. Points that
+   * snap to the same lattice point are merged. 0 only merges identical points.
+   */
+  float candidateEpsilon = 0f;
+
+  /**
+   * Whether the "recursive" experiment should find each receiver with a
+   * branch-and-bound search over a quadtree of the universe (see
+   * {@link QuadtreeSearch}) instead of zooming in on the best grid point.
+   */
+  boolean quadtreeSearch = false;
+
+  /**
+   * Size (in meters) below which quadtree cells are no longer split. The
+   * reported bound on the best score is only certain down to this size.
+   */
+  float quadtreeResolution = 0.01f;
+
+  /**
+   * Number of windows the "recursive" experiment zooms in on at once. 1 only
+   * follows the best point.
+   */
+  int beamWidth = 1;
+
+  /**
+   * Number of chains the "annealing" experiment runs in parallel. 0 runs one
+   * per worker thread.
+   */
+  int annealingChains = 0;
+
+  /**
+   * Number of moves each chain of the "annealing" experiment makes.
+   */
+  long annealingIterations = 100000;
+
   public int getNumTransmitters() {
     return numTransmitters;
   }
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Point-to-disk incidence of a fixed set of solution points, stored as
+ * compressed sparse rows in both directions (point to covering disks, and disk
+ * to covered points).
+ * <p>
+ * The incidence is computed once. After that, each point's score is a counter
+ * that is decremented when one of its disks is removed, and the best point is
+ * kept at the root of a segment tree, so choosing a receiver never rescans the
+ * points or the disks. Ties go to the point that came first in the original
+ * collection, just like the exhaustive greedy loop.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class CoverageIncidence implements ReceiverSelector {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(CoverageIncidence.class);
+
+  /**
+   * The solution points, in their original order.
+   */
+  final Point2D[] points;
+
+  /**
+   * The disks the points were scored against.
+   */
+  private final CaptureDiskTable table;
+
+  /**
+   * Start of each point's row in {@code pointDisks}. Point {@code p} is covered
+   * by {@code pointDisks[pointStart[p] .. pointStart[p+1])}.
+   */
+  final int[] pointStart;
+
+  /**
+   * Covering disk indices, by point.
+   */
+  final int[] pointDisks;
+
+  /**
+   * Start of each disk's row in {@code diskPoints}. Disk {@code d} covers
+   * {@code diskPoints[diskStart[d] .. diskStart[d+1])}.
+   */
+  final int[] diskStart;
+
+  /**
+   * Covered point indices, by disk.
+   */
+  final int[] diskPoints;
+
+  /**
+   * Number of remaining disks covering each point.
+   */
+  final int[] score;
+
+  /**
+   * Whether each disk has already been removed.
+   */
+  private final boolean[] removed;
+
+  /**
+   * Segment tree over the points; each node holds the index of the best point
+   * beneath it. Leaves start at {@code points.length}.
+   */
+  private final int[] tree;
+
+  /**
+   * Builds the incidence of the solution points against the remaining disks.
+   *
+   * @param solutionPoints
+   *          the candidate receiver positions.
+   * @param disks
+   *          the remaining capture disks.
+   * @param table
+   *          the table indexed by {@code disks}.
+   * @param workers
+   *          worker threadpool to utilize while building.
+   */
+  public CoverageIncidence(final Collection<Point2D> solutionPoints,
+      final DiskIndex disks, final CaptureDiskTable table,
+      final ExecutorService workers) {
+    super();
+    final long start = System.currentTimeMillis();
+    this.points = solutionPoints.toArray(new Point2D[solutionPoints.size()]);
+    this.table = table;
+    final int numPoints = this.points.length;
+    this.score = new int[numPoints];
+    this.pointStart = new int[numPoints + 1];
+    this.removed = new boolean[table.capacity()];
+    for (int d = 0; d < this.removed.length; ++d) {
+      this.removed[d] = !table.isLive(d);
+    }
+
+    // First pass counts, second pass fills the rows
+    final int numTasks = Math.max(1,
+        Math.min(numPoints, Main.config.numThreads * 4));
+    final Collection<Callable<Void>> counts = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < numTasks; ++t) {
+      final int first = (int) ((long) t * numPoints / numTasks);
+      final int last = (int) ((long) (t + 1) * numPoints / numTasks);
+      counts.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          final Point2D[] pts = CoverageIncidence.this.points;
+          for (int p = first; p < last; ++p) {
+            CoverageIncidence.this.score[p] = disks.count(pts[p].getX(),
+                pts[p].getY());
+          }
+          return null;
+        }
+      });
+    }
+    CoverageIncidence.invokeAll(workers, counts);
+
+    int maxScore = 0;
+    for (int p = 0; p < numPoints; ++p) {
+      this.pointStart[p + 1] = this.pointStart[p] + this.score[p];
+      maxScore = Math.max(maxScore, this.score[p]);
+    }
+    this.pointDisks = new int[this.pointStart[numPoints]];
+
+    final int bufferSize = maxScore;
+    final Collection<Callable<Void>> fills = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < numTasks; ++t) {
+      final int first = (int) ((long) t * numPoints / numTasks);
+      final int last = (int) ((long) (t + 1) * numPoints / numTasks);
+      fills.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          final Point2D[] pts = CoverageIncidence.this.points;
+          final int[] buffer = new int[bufferSize];
+          for (int p = first; p < last; ++p) {
+            final int n = disks.collect(pts[p].getX(), pts[p].getY(), buffer);
+            System.arraycopy(buffer, 0, CoverageIncidence.this.pointDisks,
+                CoverageIncidence.this.pointStart[p], n);
+          }
+          return null;
+        }
+      });
+    }
+    CoverageIncidence.invokeAll(workers, fills);
+
+    // Transpose into disk-to-point rows (a counting sort by disk)
+    this.diskStart = new int[table.capacity() + 1];
+    for (final int d : this.pointDisks) {
+      ++this.diskStart[d + 1];
+    }
+    for (int d = 1; d < this.diskStart.length; ++d) {
+      this.diskStart[d] += this.diskStart[d - 1];
+    }
+    this.diskPoints = new int[this.pointDisks.length];
+    final int[] fill = new int[table.capacity()];
+    for (int p = 0; p < numPoints; ++p) {
+      for (int i = this.pointStart[p]; i < this.pointStart[p + 1]; ++i) {
+        final int d = this.pointDisks[i];
+        this.diskPoints[this.diskStart[d] + fill[d]++] = p;
+      }
+    }
+
+    this.tree = new int[Math.max(2, 2 * numPoints)];
+    for (int p = 0; p < numPoints; ++p) {
+      this.tree[numPoints + p] = p;
+    }
+    for (int node = numPoints - 1; node > 0; --node) {
+      this.tree[node] = this.better(this.tree[2 * node],
+          this.tree[2 * node + 1]);
+    }
+
+    log.info(String.format(
+        "Built %,d x %,d incidence (%,d entries) in %,dms.",
+        Integer.valueOf(numPoints), Integer.valueOf(table.capacity()),
+        Integer.valueOf(this.pointDisks.length),
+        Long.valueOf(System.currentTimeMillis() - start)));
+  }
+
+  private static void invokeAll(final ExecutorService workers,
+      final Collection<Callable<Void>> tasks) {
+    try {
+      final List<Future<Void>> results = workers.invokeAll(tasks);
+      for (final Future<Void> future : results) {
+        future.get();
+      }
+    } catch (final InterruptedException e) {
+      e.printStackTrace();
+    } catch (final ExecutionException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns whichever point has the higher score, or the lower index on a tie.
+   */
+  private int better(final int p1, final int p2) {
+    if (this.score[p1] != this.score[p2]) {
+      return this.score[p1] > this.score[p2] ? p1 : p2;
+    }
+    return p1 < p2 ? p1 : p2;
+  }
+
+  /**
+   * Re-evaluates the path from a point's leaf to the root.
+   */
+  private void update(final int p) {
+    for (int node = (this.points.length + p) >> 1; node > 0; node >>= 1) {
+      this.tree[node] = this.better(this.tree[2 * node],
+          this.tree[2 * node + 1]);
+    }
+  }
+
+  @Override
+  public Receiver next() {
+    if (this.points.length == 0) {
+      return null;
+    }
+    final int best = this.points.length == 1 ? 0 : this.tree[1];
+    if (this.score[best] == 0) {
+      return null;
+    }
+    final Receiver receiver = new Receiver();
+    receiver.setLocation(this.points[best]);
+    receiver.coveringDisks = new ArrayList<CaptureDisk>(this.score[best]);
+    for (int i = this.pointStart[best]; i < this.pointStart[best + 1]; ++i) {
+      final int d = this.pointDisks[i];
+      if (!this.removed[d]) {
+        receiver.coveringDisks.add(this.table.disks[d]);
+      }
+    }
+    return receiver;
+  }
+
+  @Override
+  public void removeAll(final Collection<CaptureDisk> covered) {
+    for (final CaptureDisk disk : covered) {
+      final int d = disk.index;
+      if (d < 0 || d >= this.removed.length || this.removed[d]) {
+        continue;
+      }
+      this.removed[d] = true;
+      for (int i = this.diskStart[d]; i < this.diskStart[d + 1]; ++i) {
+        final int p = this.diskPoints[i];
+        --this.score[p];
+        this.update(p);
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Arrays;
+
+/**
+ * Which capture disks are covered by a set of receivers, with changes that can
+ * be rolled back.
+ * <p>
+ * Disks and transmitters are identified by their dense indices in a
+ * {@link CaptureDiskTable}. Each disk has a count of the receivers covering
+ * it, covered disks (a count above 0) are flagged in a bitset, and each
+ * transmitter keeps a count of its covered disks (the collisions it wins, so
+ * its contention is the number of other transmitters minus this count).
+ * </p>
+ * <p>
+ * Every change is appended to an undo log, so a hypothetical move of a
+ * receiver can be evaluated by taking a {@link #mark()}, uncovering the disks
+ * at its old position, covering those at its new one, reading the counts, and
+ * either keeping the changes with {@link #commit()} or undoing them with
+ * {@link #rollback(int)}, in time proportional to the number of changes
+ * rather than by copying the transmitters and disks.
+ * </p>
+ * <p>
+ * The state is not thread-safe.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class CoverageState {
+
+  /**
+   * Covered flag of each disk, 64 to a word.
+   */
+  private final long[] covered;
+
+  /**
+   * Number of receivers covering each disk.
+   */
+  private final int[] depth;
+
+  /**
+   * Transmitter that wins the collision of each disk.
+   */
+  private final int[] winner;
+
+  /**
+   * Number of covered disks of each transmitter.
+   */
+  private final int[] captured;
+
+  /**
+   * Changes since the log was last cleared, in order: the index of each
+   * covered disk, or the complement of each uncovered disk.
+   */
+  private int[] log = new int[64];
+
+  /**
+   * Number of entries in the log.
+   */
+  private int logSize = 0;
+
+  /**
+   * Number of covered disks.
+   */
+  private int numCovered = 0;
+
+  /**
+   * Creates a new state with none of the disks of a table covered.
+   *
+   * @param table
+   *          the disks, and their transmitters.
+   */
+  public CoverageState(final CaptureDiskTable table) {
+    super();
+    final int numDisks = table.capacity();
+    this.covered = new long[(numDisks + 63) >>> 6];
+    this.depth = new int[numDisks];
+    this.winner = Arrays.copyOf(table.t1, numDisks);
+    this.captured = new int[table.txers.length];
+  }
+
+  /**
+   * Determines whether a disk is covered.
+   *
+   * @param disk
+   *          the index of the disk.
+   * @return {@code true} if the disk is covered.
+   */
+  public boolean isCovered(final int disk) {
+    return (this.covered[disk >>> 6] & (1L << disk)) != 0;
+  }
+
+  private void log(final int entry) {
+    if (this.logSize == this.log.length) {
+      this.log = Arrays.copyOf(this.log, this.log.length * 2);
+    }
+    this.log[this.logSize++] = entry;
+  }
+
+  private boolean increment(final int disk) {
+    if (this.depth[disk]++ != 0) {
+      return false;
+    }
+    this.covered[disk >>> 6] |= 1L << disk;
+    ++this.captured[this.winner[disk]];
+    ++this.numCovered;
+    return true;
+  }
+
+  private boolean decrement(final int disk) {
+    if (--this.depth[disk] != 0) {
+      return false;
+    }
+    this.covered[disk >>> 6] &= ~(1L << disk);
+    --this.captured[this.winner[disk]];
+    --this.numCovered;
+    return true;
+  }
+
+  /**
+   * Adds a receiver covering a disk.
+   *
+   * @param disk
+   *          the index of the disk.
+   * @return {@code true} if the disk was not covered before.
+   */
+  public boolean cover(final int disk) {
+    this.log(disk);
+    return this.increment(disk);
+  }
+
+  /**
+   * Removes a receiver covering a disk. The disk must have been covered by
+   * that receiver.
+   *
+   * @param disk
+   *          the index of the disk.
+   * @return {@code true} if no other receiver covers the disk.
+   */
+  public boolean uncover(final int disk) {
+    this.log(~disk);
+    return this.decrement(disk);
+  }
+
+  /**
+   * Marks the current state, to roll back to later.
+   *
+   * @return the mark.
+   */
+  public int mark() {
+    return this.logSize;
+  }
+
+  /**
+   * Undoes every change made since a mark, most recent first.
+   *
+   * @param mark
+   *          a mark taken since the log was last cleared.
+   */
+  public void rollback(final int mark) {
+    while (this.logSize > mark) {
+      final int entry = this.log[--this.logSize];
+      if (entry >= 0) {
+        this.decrement(entry);
+      } else {
+        this.increment(~entry);
+      }
+    }
+  }
+
+  /**
+   * Keeps every change made so far. Earlier marks can no longer be rolled
+   * back to.
+   */
+  public void commit() {
+    this.logSize = 0;
+  }
+
+  /**
+   * The number of covered disks of a transmitter.
+   *
+   * @param txer
+   *          the index of the transmitter in the table.
+   * @return the number of its collisions that are captured.
+   */
+  public int getCaptured(final int txer) {
+    return this.captured[txer];
+  }
+
+  /**
+   * The number of covered disks.
+   *
+   * @return the number of covered disks.
+   */
+  public int getNumCovered() {
+    return this.numCovered;
+  }
+}
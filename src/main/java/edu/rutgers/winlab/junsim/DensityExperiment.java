@@ -22,13 +22,11 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -101,13 +99,19 @@ public class DensityExperiment implements Experiment {
     private static final Logger log = LoggerFactory.getLogger(SolutionCheckTask.class);
     
     /**
-     * Set of points this task should check.
+     * Points this task should check, shared with the other tasks.
      */
-    Collection<Point2D> solutionPoints;
+    PointBatches solutionPoints;
+
+    /**
+     * Index of the best point this task found, for breaking ties between
+     * tasks.
+     */
+    int maxIndex = -1;
     /**
      * Set of capture disks to check for intersections
      */
-    Collection<CaptureDisk> disks;
+    CaptureDiskTable disks;
 
     /**
      * Creates a new solution check task.
@@ -121,8 +125,6 @@ public class DensityExperiment implements Experiment {
 
         
       
-      Point2D maxPoint = null;
-      Collection<CaptureDisk> maxPointDisks = null;
       int maxDisks = 0;
       final int totalDisks = this.disks.size();
       log.info(String.format("Computing %,d points for %,d disks.",this.solutionPoints.size(),totalDisks));
@@ -130,39 +132,32 @@ public class DensityExperiment implements Experiment {
        * Determine the number of disks that intersect this point. If the number
        * is the new max, then save it. If there are no intersections, remove it.
        */
-      points: for (final Iterator<Point2D> iter = this.solutionPoints.iterator(); iter.hasNext();) {
-        final Point2D p = iter.next();
-        final Collection<CaptureDisk> pDisk = new HashSet<CaptureDisk>();
-//        int numIntersect = 0;
-//        int diskIndex = 0;
-        
-        
-        for (final CaptureDisk d : this.disks) {
-          if (DensityExperiment.checkPointInDisk(p, d)) {
-            pDisk.add(d);
-//            ++numIntersect;
+      final int[] batch = new int[2];
+      while (this.solutionPoints.next(batch)) {
+        for (int i = batch[0]; i < batch[1]; ++i) {
+          final float x = this.solutionPoints.getX(i);
+          final float y = this.solutionPoints.getY(i);
+          final int count = this.disks.count(x, y);
+          if (count > maxDisks) {
+            maxDisks = count;
+            this.maxIndex = i;
           }
-//          ++diskIndex;
-//          if((numIntersect + (totalDisks -diskIndex)) < maxDisks){
-//            continue points;
-//          }
-        }
-        if (pDisk.size() > maxDisks) {
-          maxDisks = pDisk.size();
-          maxPoint = p;
-          maxPointDisks = pDisk;
-        }
 //      Remove points that have no overlaps
-        else if(pDisk.isEmpty()){
-          iter.remove();
+          else if(count == 0){
+            this.solutionPoints.discard(i);
+          }
         }
       }
       final Receiver maxReceiver = new Receiver();
       // Remove the highest point and its solution disks
-      if (maxPoint != null) {
+      if (this.maxIndex >= 0) {
+        final Point2D maxPoint = this.solutionPoints.get(this.maxIndex);
 
         maxReceiver.setLocation(maxPoint);
-        maxReceiver.coveringDisks = maxPointDisks;
+        // Only the winner's covering disks are materialized
+        maxReceiver.coveringDisks = new ArrayList<CaptureDisk>(maxDisks);
+        this.disks.collect(maxPoint.getX(), maxPoint.getY(),
+            maxReceiver.coveringDisks);
 
       }
       // No solutions found?
@@ -188,16 +183,9 @@ public class DensityExperiment implements Experiment {
 
     }
 
-    final Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
     // Compute all possible capture disks
-    for (final Transmitter t1 : this.config.transmitters) {
-      for (final Transmitter t2 : this.config.transmitters) {
-        final CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
-        if (someDisk != null) {
-          disks.add(someDisk);
-        }
-      }
-    }
+    final CaptureDiskTable disks = new CaptureDiskTable(Main
+        .generateCaptureDisks(this.config.transmitters, this.workers));
     if (Main.gfxConfig.generateImages) {
       display.setTransmitters(this.config.transmitters);
       display.setCaptureDisks(disks);
@@ -212,7 +200,7 @@ public class DensityExperiment implements Experiment {
         + disks.size() + " disks.");
     
 
-    Collection<Point2D> solutionPoints = DensityExperiment
+    CandidateStore solutionPoints = DensityExperiment
         .generateSolutionPoints(disks, this.config.transmitters);
     log.info(String.format("[%d] Generated %,d solution points.\n",
         this.config.trialNumber, solutionPoints.size()));
@@ -226,11 +214,8 @@ public class DensityExperiment implements Experiment {
 //    final Collection<Receiver> receivers = new LinkedList<Receiver>();
     // Keep track of which collisions are captured so that packet loss
     // probabilities can be quickly calculated
-    final ConcurrentHashMap<Transmitter, HashSet<Transmitter>> capturedCollisions = new ConcurrentHashMap<Transmitter, HashSet<Transmitter>>();
-    // Add an empty set for each transmitter
-    for (final Transmitter txer : this.config.transmitters) {
-      capturedCollisions.put(txer, new HashSet<Transmitter>());
-    }
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
 
     while (m < this.config.numReceivers && !solutionPoints.isEmpty()
         && !disks.isEmpty()) {
@@ -241,40 +226,28 @@ public class DensityExperiment implements Experiment {
 
       final int numTasks = Main.config.numThreads;
       final int numPoints = solutionPoints.size();
-      final int pointsPerTask = (numPoints / numTasks) + 1;
       final long numComparisons = disks.size() * (long) numPoints;
 
-      final Collection<SolutionCheckTask> tasks = new LinkedList<DensityExperiment.SolutionCheckTask>();
-      final Iterator<Point2D> pointIter = solutionPoints.iterator();
-      SolutionCheckTask task = new SolutionCheckTask();
-      task.solutionPoints = new LinkedList<Point2D>();
-      task.disks = disks;
-      // task.parent = this;
-      tasks.add(task);
-      for (int i = 0; pointIter.hasNext(); ++i) {
-        task.solutionPoints.add(pointIter.next());
-        if (i == pointsPerTask) {
-          i = 0;
-          task = new SolutionCheckTask();
-          task.solutionPoints = new LinkedList<Point2D>();
-          task.disks = disks;
-          // task.parent = this;
-          tasks.add(task);
-        }
-      }
-      int sumTasks = 0;
-      for (final SolutionCheckTask t : tasks) {
-        log.info(String.format("Task (%,d)\n", t.solutionPoints.size()));
-        sumTasks += t.solutionPoints.size();
+      final PointBatches batches = new PointBatches(solutionPoints, numTasks);
+      final List<SolutionCheckTask> tasks = new ArrayList<DensityExperiment.SolutionCheckTask>(
+          numTasks);
+      for (int i = 0; i < numTasks; ++i) {
+        final SolutionCheckTask task = new SolutionCheckTask();
+        task.solutionPoints = batches;
+        task.disks = disks;
+        tasks.add(task);
       }
 
-      log.info(String.format("Divided %,d/%,d points.\n", sumTasks, numPoints));
+      log.info(String.format("Sharing %,d points between %,d tasks.\n",
+          numPoints, numTasks));
       final long start = System.currentTimeMillis();
       Receiver maxReceiver = null;
       try {
         final List<Future<Receiver>> solutions = this.workers.invokeAll(tasks);
 
-        for (final Future<Receiver> future : solutions) {
+        int maxIndex = -1;
+        for (int t = 0; t < solutions.size(); ++t) {
+          final Future<Receiver> future = solutions.get(t);
           if (future.isCancelled() || !future.isDone()) {
            log.error("One of the tasks was cancelled! Double-check the code!");
             return Boolean.FALSE;
@@ -284,9 +257,14 @@ public class DensityExperiment implements Experiment {
             if (r == null) {
               continue;
             }
+            // Equal scores go to the earliest point, as in a single pass
+            final int rIndex = tasks.get(t).maxIndex;
             if (maxReceiver == null
-                || r.coveringDisks.size() > maxReceiver.coveringDisks.size()) {
+                || r.coveringDisks.size() > maxReceiver.coveringDisks.size()
+                || (r.coveringDisks.size() == maxReceiver.coveringDisks
+                    .size() && rIndex < maxIndex)) {
               maxReceiver = r;
+              maxIndex = rIndex;
             }
           } catch (final ExecutionException e) {
             // TODO Auto-generated catch block
@@ -305,42 +283,20 @@ public class DensityExperiment implements Experiment {
         break;
       }
 
-      solutionPoints.clear();
-      for (final SolutionCheckTask t : tasks) {
-        solutionPoints.addAll(t.solutionPoints);
-      }
+      solutionPoints = batches.remaining();
 
       // Add the newest receiver and remove newly covered points and disks
       this.config.receivers.add(maxReceiver);
       solutionPoints.remove(maxReceiver);
-      // Add captures to each transmitter's capture set for collision
-      // calculations
-      for (final CaptureDisk disk : maxReceiver.coveringDisks) {
-        capturedCollisions.get(disk.t1).add(disk.t2);
-        disk.t1.addCoveredDisk(disk);
-      }
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(maxReceiver.coveringDisks);
       disks.removeAll(maxReceiver.coveringDisks);
 
-      // Calculate collision rates for each transmitter
-      // Store the min, max, and mean
-      float mean_contention = 0.0f;
-      float min_contention = this.config.numTransmitters;
-      float max_contention = 0.0f;
-      for (final Transmitter txer : this.config.transmitters) {
-        // Calculate the number of transmitters in contention
-        // Subtract 1 because this transmitter can never be in contention with
-        // itself
-        final int num_in_contention = this.config.numTransmitters - 1
-            - capturedCollisions.get(txer).size();
-        
-        min_contention = Math.min(num_in_contention, min_contention);
-        max_contention = Math.max(num_in_contention, max_contention);
-        mean_contention += (float) num_in_contention
-            / this.config.numTransmitters;
-      }
-      this.stats[m].addContention(mean_contention);
-      this.stats[m].addMinContention(min_contention);
-      this.stats[m].addMaxContention(max_contention);
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
 
       final float capturedDisks = totalCaptureDisks - disks.size();
       final float captureRatio = (capturedDisks / totalCaptureDisks);
@@ -379,24 +335,10 @@ public class DensityExperiment implements Experiment {
     return Boolean.TRUE;
   }
 
-  static boolean checkPointInDisk(final Point2D p, final CaptureDisk d) {
-    final double dist1 = Math.sqrt(Math.pow(p.getX() - d.t1.getX(), 2)
-        + Math.pow(p.getY() - d.t1.getY(), 2));
-    final double dist2 = Math.sqrt(Math.pow(p.getX() - d.t2.getX(), 2)
-        + Math.pow(p.getY() - d.t2.getY(), 2));
-    // This point is too far away from the transmitters for this disk
-    if (dist1 > Main.config.maxRangeMeters
-        && dist2 > Main.config.maxRangeMeters) {
-      return false;
-    }
-    return d.disk.contains(p);
-
-  }
-
-  private static Collection<Point2D> generateSolutionPoints(
+  private static CandidateStore generateSolutionPoints(
       final Collection<CaptureDisk> disks, final Collection<Transmitter> transmitters) {
 
-      final Collection<Point2D> solutionPoints = new HashSet<Point2D>();
+      final CandidateStore solutionPoints = new CandidateStore();
       float maxHeight = Main.config.universeHeight;
       float maxWidth = Main.config.universeWidth;
       float cellHeight = maxHeight / Main.config.densityRoot;
@@ -430,25 +372,4 @@ public class DensityExperiment implements Experiment {
     return solutionPoints;
   }
 
-  /**
-   * Returns true if a point is within the transmit radius of at least one
-   * transmitter, else false.
-   * 
-   * @param p
-   *          the point to test.
-   * @return {@code true} if the point is within the transmit radius of at
-   *         leaset one transmitter.
-   */
-  private static boolean checkPointInRange(final Point2D p,
-      final Collection<Transmitter> transmitters) {
-    for (final Transmitter t : transmitters) {
-      final double d = Math.sqrt(Math.pow(p.getX() - t.getX(), 2)
-          + Math.pow(p.getY() - t.getY(), 2));
-      if (d < Main.config.maxRangeMeters) {
-        return true;
-      }
-    }
-    return false;
-  }
-
 }
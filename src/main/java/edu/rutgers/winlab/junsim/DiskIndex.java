@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bucket grid over the bounds of the disks in a {@link CaptureDiskTable}. Each
+ * cell lists the disks whose bounds overlap it, so a point query ("which disks
+ * cover this point?") only needs to test the disks in the point's cell instead
+ * of every remaining disk.
+ * <p>
+ * Within a cell, disks are listed from smallest to largest radius. Small disks
+ * are the most likely to miss a point, so {@link #countAtLeast} can give up on
+ * a point sooner.
+ * </p>
+ * <p>
+ * Removing disks through the index removes them from the table as well, and
+ * drops them from every cell they were listed in. Queries may run
+ * concurrently, but removals must not overlap with them.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class DiskIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(DiskIndex.class);
+
+  /**
+   * Upper bound on the number of cells, relative to the number of disks.
+   */
+  private static final int MAX_CELLS_PER_DISK = 4;
+
+  /**
+   * The disks being indexed.
+   */
+  private final CaptureDiskTable table;
+
+  /**
+   * Disk indices, grouped by cell. Cell {@code i} occupies
+   * {@code [cellStart[i], cellStart[i] + cellCount[i])}.
+   */
+  private final int[] cellDisks;
+
+  /**
+   * Start offset of each cell within {@code cellDisks}.
+   */
+  private final int[] cellStart;
+
+  /**
+   * Number of remaining disks in each cell.
+   */
+  private final int[] cellCount;
+
+  /**
+   * Minimum x-coordinate covered by the grid.
+   */
+  private final float minX;
+
+  /**
+   * Minimum y-coordinate covered by the grid.
+   */
+  private final float minY;
+
+  /**
+   * Width and height of each cell.
+   */
+  private final float cellSize;
+
+  /**
+   * Number of columns in the grid.
+   */
+  private final int columns;
+
+  /**
+   * Number of rows in the grid.
+   */
+  private final int rows;
+
+  /**
+   * Creates a new index over the remaining disks of a table.
+   *
+   * @param table
+   *          the disks to index.
+   */
+  public DiskIndex(final CaptureDiskTable table) {
+    super();
+    this.table = table;
+
+    float lowX = Float.MAX_VALUE;
+    float lowY = Float.MAX_VALUE;
+    float highX = -Float.MAX_VALUE;
+    float highY = -Float.MAX_VALUE;
+    double sumExtent = 0;
+    for (final CaptureDisk d : table) {
+      final int i = d.index;
+      lowX = Math.min(lowX, table.minX[i]);
+      lowY = Math.min(lowY, table.minY[i]);
+      highX = Math.max(highX, table.maxX[i]);
+      highY = Math.max(highY, table.maxY[i]);
+      sumExtent += Math.max(table.maxX[i] - table.minX[i], table.maxY[i]
+          - table.minY[i]);
+    }
+    if (table.isEmpty()) {
+      lowX = lowY = highX = highY = 0;
+    }
+    this.minX = lowX;
+    this.minY = lowY;
+
+    // Cells about the size of an average disk
+    final float width = Math.max(highX - lowX, Float.MIN_VALUE);
+    final float height = Math.max(highY - lowY, Float.MIN_VALUE);
+    float size = table.isEmpty() ? Math.max(width, height)
+        : (float) (sumExtent / table.size());
+    size = Math.max(size, Math.max(width, height) / 4096f);
+    final long maxCells = Math.max(1, (long) table.size() * MAX_CELLS_PER_DISK);
+    while (((long) (width / size) + 1) * ((long) (height / size) + 1) > maxCells) {
+      size *= 2;
+    }
+    this.cellSize = size;
+    this.columns = (int) (width / size) + 1;
+    this.rows = (int) (height / size) + 1;
+
+    // Counting sort of the disks into every cell their bounds overlap
+    final int numCells = this.columns * this.rows;
+    this.cellStart = new int[numCells + 1];
+    this.cellCount = new int[numCells];
+    for (final CaptureDisk d : table) {
+      final int i = d.index;
+      final int highCol = this.getColumn(table.maxX[i]);
+      final int highRow = this.getRow(table.maxY[i]);
+      for (int row = this.getRow(table.minY[i]); row <= highRow; ++row) {
+        for (int col = this.getColumn(table.minX[i]); col <= highCol; ++col) {
+          ++this.cellStart[row * this.columns + col + 1];
+        }
+      }
+    }
+    for (int c = 1; c < this.cellStart.length; ++c) {
+      this.cellStart[c] += this.cellStart[c - 1];
+    }
+    this.cellDisks = new int[this.cellStart[numCells]];
+    // Radii are positive, so their bits sort in the same order as the values
+    final long[] byRadius = new long[table.size()];
+    int n = 0;
+    for (final CaptureDisk d : table) {
+      byRadius[n++] = ((long) Float.floatToIntBits(table.radius[d.index]) << 32)
+          | d.index;
+    }
+    Arrays.sort(byRadius);
+    for (final long key : byRadius) {
+      final int i = (int) key;
+      final int highCol = this.getColumn(table.maxX[i]);
+      final int highRow = this.getRow(table.maxY[i]);
+      for (int row = this.getRow(table.minY[i]); row <= highRow; ++row) {
+        for (int col = this.getColumn(table.minX[i]); col <= highCol; ++col) {
+          final int cell = row * this.columns + col;
+          this.cellDisks[this.cellStart[cell] + this.cellCount[cell]++] = i;
+        }
+      }
+    }
+
+    log.debug(String.format(
+        "Indexed %,d disks into %,d x %,d cells of %.2f (%,d entries).",
+        Integer.valueOf(table.size()), Integer.valueOf(this.columns),
+        Integer.valueOf(this.rows), Float.valueOf(this.cellSize),
+        Integer.valueOf(this.cellDisks.length)));
+  }
+
+  private int getColumn(final double x) {
+    final int col = (int) Math.floor((x - this.minX) / this.cellSize);
+    return col < 0 ? 0 : (col >= this.columns ? this.columns - 1 : col);
+  }
+
+  private int getRow(final double y) {
+    final int row = (int) Math.floor((y - this.minY) / this.cellSize);
+    return row < 0 ? 0 : (row >= this.rows ? this.rows - 1 : row);
+  }
+
+  /**
+   * Counts the remaining disks that cover a point.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @return the number of covering disks.
+   */
+  public int count(final double x, final double y) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    final int cell = this.getRow(y) * this.columns + this.getColumn(x);
+    final int start = this.cellStart[cell];
+    final int end = start + this.cellCount[cell];
+    int count = 0;
+    for (int i = start; i < end; ++i) {
+      if (Geometry.covers(this.table, this.cellDisks[i], x, y, rangeSq)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Counts the remaining disks that cover a point, giving up as soon as the
+   * count can no longer reach {@code threshold}.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param threshold
+   *          the lowest count of interest.
+   * @return the number of covering disks, or -1 if it is less than
+   *         {@code threshold}.
+   */
+  public int countAtLeast(final double x, final double y, final int threshold) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    final int cell = this.getRow(y) * this.columns + this.getColumn(x);
+    final int start = this.cellStart[cell];
+    final int end = start + this.cellCount[cell];
+    if (end - start < threshold) {
+      return -1;
+    }
+    int count = 0;
+    for (int i = start; i < end; ++i) {
+      if (Geometry.covers(this.table, this.cellDisks[i], x, y, rangeSq)) {
+        ++count;
+      } else if (count + (end - i - 1) < threshold) {
+        return -1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the indices of the remaining disks that cover a point.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param covering
+   *          buffer that receives the indices of the covering disks. Must hold
+   *          at least {@code size()} values.
+   * @return the number of covering disks.
+   */
+  public int collect(final double x, final double y, final int[] covering) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    final int cell = this.getRow(y) * this.columns + this.getColumn(x);
+    final int start = this.cellStart[cell];
+    final int end = start + this.cellCount[cell];
+    int count = 0;
+    for (int i = start; i < end; ++i) {
+      final int disk = this.cellDisks[i];
+      if (Geometry.covers(this.table, disk, x, y, rangeSq)) {
+        covering[count++] = disk;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Adds every remaining disk that covers a point to a collection.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param covering
+   *          the collection to add the covering disks to.
+   * @return the number of covering disks.
+   */
+  public int collect(final double x, final double y,
+      final Collection<CaptureDisk> covering) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    final int cell = this.getRow(y) * this.columns + this.getColumn(x);
+    final int start = this.cellStart[cell];
+    final int end = start + this.cellCount[cell];
+    int count = 0;
+    for (int i = start; i < end; ++i) {
+      final int disk = this.cellDisks[i];
+      if (Geometry.covers(this.table, disk, x, y, rangeSq)) {
+        covering.add(this.table.disks[disk]);
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Removes disks from the table and from the index.
+   *
+   * @param removed
+   *          the disks to remove.
+   * @return {@code true} if any disks were removed.
+   */
+  public boolean removeAll(final Collection<CaptureDisk> removed) {
+    for (final CaptureDisk d : removed) {
+      if (this.table.contains(d)) {
+        this.unlink(d.index);
+      }
+    }
+    return this.table.removeAll(removed);
+  }
+
+  /**
+   * Drops a disk from every cell its bounds overlap, keeping the remaining
+   * disks in each cell in their original order.
+   */
+  private void unlink(final int disk) {
+    final int highCol = this.getColumn(this.table.maxX[disk]);
+    final int highRow = this.getRow(this.table.maxY[disk]);
+    for (int row = this.getRow(this.table.minY[disk]); row <= highRow; ++row) {
+      for (int col = this.getColumn(this.table.minX[disk]); col <= highCol; ++col) {
+        final int cell = row * this.columns + col;
+        final int start = this.cellStart[cell];
+        final int end = start + this.cellCount[cell];
+        for (int i = start; i < end; ++i) {
+          if (this.cellDisks[i] == disk) {
+            System.arraycopy(this.cellDisks, i + 1, this.cellDisks, i, end - i
+                - 1);
+            --this.cellCount[cell];
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The number of disks remaining in the table.
+   *
+   * @return the number of remaining disks.
+   */
+  public int size() {
+    return this.table.size();
+  }
+}
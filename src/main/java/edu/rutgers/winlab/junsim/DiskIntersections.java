@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Intersection points of every pair of capture disks, found without testing
+ * every pair.
+ * <p>
+ * The bounds of each disk (clipped to the universe, since intersections
+ * outside of it are discarded anyway) are listed in every cell of a uniform
+ * grid that they overlap, and only disks sharing a cell are intersected. A
+ * pair whose bounds overlap several cells is only intersected in the cell
+ * holding the lower corner of the overlap, so each pair is visited once.
+ * </p>
+ * <p>
+ * Cells are split into contiguous ranges that are searched in parallel, each
+ * task writing to its own buffers. The buffers are joined in cell order, so
+ * the points come out in the same order regardless of the number of threads.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class DiskIntersections {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(DiskIntersections.class);
+
+  /**
+   * Upper bound on the number of cells, relative to the number of disks.
+   */
+  private static final int MAX_CELLS_PER_DISK = 4;
+
+  /**
+   * Distance the disk bounds are widened by, so that rounding cannot drop a
+   * pair of (nearly) tangent disks.
+   */
+  private static final float SLACK = 0.01f;
+
+  /**
+   * Coordinates of the points, as x/y pairs.
+   */
+  final float[] points;
+
+  /**
+   * Index of the first disk of the pair that produced each point.
+   */
+  final int[] first;
+
+  /**
+   * Index of the second disk of the pair that produced each point.
+   */
+  final int[] second;
+
+  /**
+   * The number of points.
+   */
+  final int size;
+
+  private DiskIntersections(final float[] points, final int[] first,
+      final int[] second, final int size) {
+    super();
+    this.points = points;
+    this.first = first;
+    this.second = second;
+    this.size = size;
+  }
+
+  /**
+   * Output buffers of a single task.
+   */
+  private static final class Buffer {
+    float[] points = new float[64];
+
+    int[] first = new int[32];
+
+    int[] second = new int[32];
+
+    int size = 0;
+
+    long pairs = 0;
+
+    void add(final float x, final float y, final int d1, final int d2) {
+      if (this.size == this.first.length) {
+        this.points = Arrays.copyOf(this.points, this.points.length * 2);
+        this.first = Arrays.copyOf(this.first, this.first.length * 2);
+        this.second = Arrays.copyOf(this.second, this.second.length * 2);
+      }
+      this.points[2 * this.size] = x;
+      this.points[2 * this.size + 1] = y;
+      this.first[this.size] = d1;
+      this.second[this.size] = d2;
+      ++this.size;
+    }
+  }
+
+  /**
+   * Receives the points found by {@link DiskIntersections#stream}, one batch at
+   * a time.
+   */
+  public interface PointSink {
+
+    /**
+     * Accepts a batch of points. The array is reused for the next batch once
+     * this method returns.
+     *
+     * @param points
+     *          the coordinates of the points, as x/y pairs.
+     * @param count
+     *          the number of points in the batch.
+     * @throws InterruptedException
+     *           if the thread is interrupted while handing off the batch.
+     * @throws ExecutionException
+     *           if whatever consumes the batches has failed.
+     */
+    public void accept(float[] points, int count) throws InterruptedException,
+        ExecutionException;
+  }
+
+  /**
+   * The disk bounds, bucketed into a uniform grid over the universe.
+   */
+  private static final class PairGrid {
+
+    final CaptureDisk[] disks;
+
+    final RangeMask inRange;
+
+    final float[] minX;
+
+    final float[] minY;
+
+    final float[] maxX;
+
+    final float[] maxY;
+
+    final float cellSize;
+
+    final int columns;
+
+    final int rows;
+
+    final int numCells;
+
+    /**
+     * Disk indices, grouped by cell. Cell {@code i} occupies
+     * {@code [cellStart[i], cellStart[i + 1])}.
+     */
+    final int[] cellDisks;
+
+    final int[] cellStart;
+
+    PairGrid(final CaptureDisk[] disks, final RangeMask inRange) {
+      this.disks = disks;
+      this.inRange = inRange;
+      final int numDisks = disks.length;
+      final float width = Main.config.universeWidth;
+      final float height = Main.config.universeHeight;
+
+      // Disk bounds, clipped to the universe
+      this.minX = new float[numDisks];
+      this.minY = new float[numDisks];
+      this.maxX = new float[numDisks];
+      this.maxY = new float[numDisks];
+      final boolean[] inside = new boolean[numDisks];
+      double sumExtent = 0;
+      int numInside = 0;
+      for (int i = 0; i < numDisks; ++i) {
+        final float r = disks[i].disk.radius + SLACK;
+        this.minX[i] = Math.max(-SLACK, disks[i].disk.center.x - r);
+        this.minY[i] = Math.max(-SLACK, disks[i].disk.center.y - r);
+        this.maxX[i] = Math.min(width + SLACK, disks[i].disk.center.x + r);
+        this.maxY[i] = Math.min(height + SLACK, disks[i].disk.center.y + r);
+        inside[i] = this.minX[i] <= this.maxX[i] && this.minY[i] <= this.maxY[i];
+        if (inside[i]) {
+          sumExtent += Math.max(this.maxX[i] - this.minX[i], this.maxY[i]
+              - this.minY[i]);
+          ++numInside;
+        }
+      }
+
+      // Cells about the size of an average (clipped) disk
+      final float spanX = width + 2 * SLACK;
+      final float spanY = height + 2 * SLACK;
+      float size = numInside == 0 ? Math.max(spanX, spanY)
+          : (float) (sumExtent / numInside);
+      size = Math.max(size, Math.max(spanX, spanY) / 4096f);
+      final long maxCells = Math.max(1, (long) numInside * MAX_CELLS_PER_DISK);
+      while (((long) (spanX / size) + 1) * ((long) (spanY / size) + 1) > maxCells) {
+        size *= 2;
+      }
+      this.cellSize = size;
+      this.columns = (int) (spanX / size) + 1;
+      this.rows = (int) (spanY / size) + 1;
+      this.numCells = this.columns * this.rows;
+
+      // Counting sort of the disks into every cell their bounds overlap
+      this.cellStart = new int[this.numCells + 1];
+      for (int i = 0; i < numDisks; ++i) {
+        if (!inside[i]) {
+          continue;
+        }
+        final int highCol = this.getColumn(this.maxX[i]);
+        final int highRow = this.getRow(this.maxY[i]);
+        for (int row = this.getRow(this.minY[i]); row <= highRow; ++row) {
+          for (int col = this.getColumn(this.minX[i]); col <= highCol; ++col) {
+            ++this.cellStart[row * this.columns + col + 1];
+          }
+        }
+      }
+      for (int c = 1; c < this.cellStart.length; ++c) {
+        this.cellStart[c] += this.cellStart[c - 1];
+      }
+      this.cellDisks = new int[this.cellStart[this.numCells]];
+      final int[] cellCount = new int[this.numCells];
+      for (int i = 0; i < numDisks; ++i) {
+        if (!inside[i]) {
+          continue;
+        }
+        final int highCol = this.getColumn(this.maxX[i]);
+        final int highRow = this.getRow(this.maxY[i]);
+        for (int row = this.getRow(this.minY[i]); row <= highRow; ++row) {
+          for (int col = this.getColumn(this.minX[i]); col <= highCol; ++col) {
+            final int cell = row * this.columns + col;
+            this.cellDisks[this.cellStart[cell] + cellCount[cell]++] = i;
+          }
+        }
+      }
+    }
+
+    private int getColumn(final float x) {
+      final int col = (int) Math.floor((x + SLACK) / this.cellSize);
+      return col < 0 ? 0 : (col >= this.columns ? this.columns - 1 : col);
+    }
+
+    private int getRow(final float y) {
+      final int row = (int) Math.floor((y + SLACK) / this.cellSize);
+      return row < 0 ? 0 : (row >= this.rows ? this.rows - 1 : row);
+    }
+
+    /**
+     * Intersects the pairs of disks assigned to a range of cells.
+     */
+    void search(final int firstCell, final int lastCell, final Buffer buffer) {
+      final float[] found = new float[4];
+      for (int cell = firstCell; cell < lastCell; ++cell) {
+        final int start = this.cellStart[cell];
+        final int end = this.cellStart[cell + 1];
+        for (int p = start; p < end; ++p) {
+          final int d1 = this.cellDisks[p];
+          for (int q = p + 1; q < end; ++q) {
+            final int d2 = this.cellDisks[q];
+            if (this.minX[d2] > this.maxX[d1] || this.maxX[d2] < this.minX[d1]
+                || this.minY[d2] > this.maxY[d1] || this.maxY[d2] < this.minY[d1]) {
+              continue;
+            }
+            // Only the cell holding the corner of the overlap tries it
+            final int col = this.getColumn(Math.max(this.minX[d1],
+                this.minX[d2]));
+            final int row = this.getRow(Math.max(this.minY[d1], this.minY[d2]));
+            if (row * this.columns + col != cell) {
+              continue;
+            }
+            ++buffer.pairs;
+            final int numPoints = Main.generateIntersections(this.disks[d1],
+                this.disks[d2], found);
+            for (int k = 0; k < numPoints; ++k) {
+              final float x = found[2 * k];
+              final float y = found[2 * k + 1];
+              if (this.inRange.contains(x, y)) {
+                buffer.add(x, y, d1, d2);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the intersection points of every pair of disks that are inside the
+   * universe and within range of a transmitter. Each pair is passed to
+   * {@link Main#generateIntersections} with the lower-indexed disk first.
+   *
+   * @param disks
+   *          the capture disks.
+   * @param inRange
+   *          which points are within range of a transmitter.
+   * @param workers
+   *          worker threadpool to utilize.
+   * @return the intersection points.
+   */
+  public static DiskIntersections find(final CaptureDisk[] disks,
+      final RangeMask inRange, final ExecutorService workers) {
+    final PairGrid grid = new PairGrid(disks, inRange);
+
+    final int numTasks = Math.max(1,
+        Math.min(grid.numCells, Main.config.numThreads * 4));
+    final Buffer[] buffers = new Buffer[numTasks];
+    final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < numTasks; ++t) {
+      final int firstCell = (int) ((long) t * grid.numCells / numTasks);
+      final int lastCell = (int) ((long) (t + 1) * grid.numCells / numTasks);
+      final Buffer buffer = new Buffer();
+      buffers[t] = buffer;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          grid.search(firstCell, lastCell, buffer);
+          return null;
+        }
+      });
+    }
+    try {
+      final List<Future<Void>> results = workers.invokeAll(tasks);
+      for (final Future<Void> future : results) {
+        future.get();
+      }
+    } catch (final InterruptedException e) {
+      e.printStackTrace();
+    } catch (final ExecutionException e) {
+      e.printStackTrace();
+    }
+
+    int total = 0;
+    long pairs = 0;
+    for (final Buffer buffer : buffers) {
+      total += buffer.size;
+      pairs += buffer.pairs;
+    }
+    final float[] points = new float[2 * total];
+    final int[] first = new int[total];
+    final int[] second = new int[total];
+    int offset = 0;
+    for (final Buffer buffer : buffers) {
+      System.arraycopy(buffer.points, 0, points, 2 * offset, 2 * buffer.size);
+      System.arraycopy(buffer.first, 0, first, offset, buffer.size);
+      System.arraycopy(buffer.second, 0, second, offset, buffer.size);
+      offset += buffer.size;
+    }
+
+    log.info(String.format(
+        "Intersected %,d of %,d disk pairs (%,d x %,d cells), found %,d points.",
+        Long.valueOf(pairs),
+        Long.valueOf((long) disks.length * (disks.length - 1) / 2),
+        Integer.valueOf(grid.columns), Integer.valueOf(grid.rows),
+        Integer.valueOf(total)));
+    return new DiskIntersections(points, first, second, total);
+  }
+
+  /**
+   * Finds the same points as {@link #find}, in the same order, but hands them
+   * to a sink in batches as they are found instead of keeping them. The search
+   * runs in the calling thread.
+   *
+   * @param disks
+   *          the capture disks.
+   * @param inRange
+   *          which points are within range of a transmitter.
+   * @param batchSize
+   *          the number of points to collect before handing them off. A batch
+   *          may be slightly larger, since a pair's points are not split.
+   * @param sink
+   *          receives the batches.
+   * @throws InterruptedException
+   *           if the sink is interrupted.
+   * @throws ExecutionException
+   *           if the sink reports that its consumer has failed.
+   */
+  public static void stream(final CaptureDisk[] disks,
+      final RangeMask inRange, final int batchSize, final PointSink sink)
+      throws InterruptedException, ExecutionException {
+    final PairGrid grid = new PairGrid(disks, inRange);
+    final Buffer buffer = new Buffer();
+    for (int cell = 0; cell < grid.numCells; ++cell) {
+      grid.search(cell, cell + 1, buffer);
+      if (buffer.size >= batchSize) {
+        sink.accept(buffer.points, buffer.size);
+        buffer.size = 0;
+      }
+    }
+    if (buffer.size > 0) {
+      sink.accept(buffer.points, buffer.size);
+    }
+  }
+}
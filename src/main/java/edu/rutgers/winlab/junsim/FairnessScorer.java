@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores points for the "fair" experiment without copying any transmitters or
+ * disks.
+ * <p>
+ * The fairness score of a point is the average drop in contention over the
+ * transmitters (above a contention cutoff) that the point would improve.
+ * Scoring it on copies of the transmitters, as the copies start with none of
+ * their disks covered, drops each transmitter's contention by the number of
+ * its disks that cover the point. So the score only needs, for each
+ * transmitter, a count of its disks covering the point, which is kept in
+ * per-task counters that are reset after every point.
+ * </p>
+ * <p>
+ * The disks of every transmitter are bucketed into a grid once, so a point is
+ * only tested against the disks near it. The scorer is immutable once built,
+ * and only reads the transmitters' contention, so it is safe to share between
+ * tasks while no disks are being covered.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class FairnessScorer {
+
+  /**
+   * Upper bound on the number of cells, relative to the number of disks.
+   */
+  private static final int MAX_CELLS_PER_DISK = 4;
+
+  /**
+   * The transmitters.
+   */
+  private final Transmitter[] txers;
+
+  /**
+   * Every disk of the transmitters.
+   */
+  private final CaptureDisk[] disks;
+
+  /**
+   * Index of the transmitter each disk belongs to.
+   */
+  private final int[] owner;
+
+  /**
+   * Disk indices, grouped by cell.
+   */
+  private final int[] cellDisks;
+
+  /**
+   * Start offset of each cell within {@code cellDisks}. Cell {@code i}
+   * occupies {@code [cellStart[i], cellStart[i+1])}.
+   */
+  private final int[] cellStart;
+
+  /**
+   * Minimum x-coordinate covered by the grid.
+   */
+  private final double minX;
+
+  /**
+   * Minimum y-coordinate covered by the grid.
+   */
+  private final double minY;
+
+  /**
+   * Width and height of each cell.
+   */
+  private final double cellSize;
+
+  /**
+   * Number of columns in the grid.
+   */
+  private final int columns;
+
+  /**
+   * Number of rows in the grid.
+   */
+  private final int rows;
+
+  /**
+   * Creates a new scorer over the disks of some transmitters.
+   *
+   * @param transmitters
+   *          the transmitters, with their disks.
+   */
+  public FairnessScorer(final Collection<Transmitter> transmitters) {
+    super();
+    this.txers = transmitters.toArray(new Transmitter[transmitters.size()]);
+    final Map<Transmitter, Integer> txIndex = new IdentityHashMap<Transmitter, Integer>();
+    final List<CaptureDisk> all = new ArrayList<CaptureDisk>();
+    for (int t = 0; t < this.txers.length; ++t) {
+      txIndex.put(this.txers[t], Integer.valueOf(t));
+      all.addAll(this.txers[t].getDisks());
+    }
+    this.disks = all.toArray(new CaptureDisk[all.size()]);
+    this.owner = new int[this.disks.length];
+
+    double lowX = Double.MAX_VALUE;
+    double lowY = Double.MAX_VALUE;
+    double highX = -Double.MAX_VALUE;
+    double highY = -Double.MAX_VALUE;
+    double sumExtent = 0;
+    for (int i = 0; i < this.disks.length; ++i) {
+      final CaptureDisk d = this.disks[i];
+      this.owner[i] = txIndex.get(d.t1).intValue();
+      final double r = Geometry.coverRadius(d.disk.radius);
+      lowX = Math.min(lowX, d.disk.center.x - r);
+      lowY = Math.min(lowY, d.disk.center.y - r);
+      highX = Math.max(highX, d.disk.center.x + r);
+      highY = Math.max(highY, d.disk.center.y + r);
+      sumExtent += 2 * r;
+    }
+    if (this.disks.length == 0) {
+      lowX = lowY = highX = highY = 0;
+    }
+    this.minX = lowX;
+    this.minY = lowY;
+
+    // Cells about the size of an average disk
+    final double width = Math.max(highX - lowX, Float.MIN_VALUE);
+    final double height = Math.max(highY - lowY, Float.MIN_VALUE);
+    double size = this.disks.length == 0 ? Math.max(width, height)
+        : sumExtent / this.disks.length;
+    size = Math.max(size, Math.max(width, height) / 4096);
+    final long maxCells = Math.max(1, (long) this.disks.length
+        * MAX_CELLS_PER_DISK);
+    while (((long) (width / size) + 1) * ((long) (height / size) + 1) > maxCells) {
+      size *= 2;
+    }
+    this.cellSize = size;
+    this.columns = (int) (width / size) + 1;
+    this.rows = (int) (height / size) + 1;
+
+    // Counting sort of the disks into every cell their bounds overlap
+    final int numCells = this.columns * this.rows;
+    this.cellStart = new int[numCells + 1];
+    for (final CaptureDisk d : this.disks) {
+      final double r = Geometry.coverRadius(d.disk.radius);
+      final int highCol = this.getColumn(d.disk.center.x + r);
+      final int highRow = this.getRow(d.disk.center.y + r);
+      for (int row = this.getRow(d.disk.center.y - r); row <= highRow; ++row) {
+        for (int col = this.getColumn(d.disk.center.x - r); col <= highCol; ++col) {
+          ++this.cellStart[row * this.columns + col + 1];
+        }
+      }
+    }
+    for (int c = 1; c < this.cellStart.length; ++c) {
+      this.cellStart[c] += this.cellStart[c - 1];
+    }
+    this.cellDisks = new int[this.cellStart[numCells]];
+    final int[] fill = new int[numCells];
+    for (int i = 0; i < this.disks.length; ++i) {
+      final CaptureDisk d = this.disks[i];
+      final double r = Geometry.coverRadius(d.disk.radius);
+      final int highCol = this.getColumn(d.disk.center.x + r);
+      final int highRow = this.getRow(d.disk.center.y + r);
+      for (int row = this.getRow(d.disk.center.y - r); row <= highRow; ++row) {
+        for (int col = this.getColumn(d.disk.center.x - r); col <= highCol; ++col) {
+          final int cell = row * this.columns + col;
+          this.cellDisks[this.cellStart[cell] + fill[cell]++] = i;
+        }
+      }
+    }
+  }
+
+  private int getColumn(final double x) {
+    final int col = (int) Math.floor((x - this.minX) / this.cellSize);
+    return col < 0 ? 0 : (col >= this.columns ? this.columns - 1 : col);
+  }
+
+  private int getRow(final double y) {
+    final int row = (int) Math.floor((y - this.minY) / this.cellSize);
+    return row < 0 ? 0 : (row >= this.rows ? this.rows - 1 : row);
+  }
+
+  /**
+   * The number of transmitters, which is the length the buffers passed to
+   * {@link #score} must have.
+   *
+   * @return the number of transmitters.
+   */
+  public int size() {
+    return this.txers.length;
+  }
+
+  /**
+   * Computes the fairness score of a point: the average drop in contention of
+   * the transmitters with a contention above {@code minContention} that have
+   * a disk covering the point.
+   *
+   * @param pnt
+   *          the point to score.
+   * @param minContention
+   *          only transmitters with a higher contention are counted.
+   * @param counts
+   *          per-transmitter counters, all 0. They are left at 0.
+   * @param improved
+   *          buffer for the indices of the improved transmitters.
+   * @return the average contention improvement of the improved transmitters,
+   *         or 0 if none are improved.
+   */
+  public float score(final Point2D pnt, final int minContention,
+      final int[] counts, final int[] improved) {
+    final int cell = this.getRow(pnt.getY()) * this.columns
+        + this.getColumn(pnt.getX());
+    int numImproved = 0;
+    for (int i = this.cellStart[cell]; i < this.cellStart[cell + 1]; ++i) {
+      final int d = this.cellDisks[i];
+      final int t = this.owner[d];
+      if (counts[t] == 0
+          && this.txers[t].getContention() <= minContention) {
+        continue;
+      }
+      if (Geometry.covers(pnt, this.disks[d])) {
+        if (counts[t]++ == 0) {
+          improved[numImproved++] = t;
+        }
+      }
+    }
+    float score = 0;
+    for (int i = 0; i < numImproved; ++i) {
+      score += counts[improved[i]];
+      counts[improved[i]] = 0;
+    }
+    return numImproved == 0 ? 0 : score / numImproved;
+  }
+
+  /**
+   * Finds the disks covering a point whose transmitters have a contention
+   * above {@code minContention}.
+   *
+   * @param pnt
+   *          the point.
+   * @param minContention
+   *          only disks of transmitters with a higher contention are added.
+   * @param covering
+   *          collection to add the covering disks to.
+   */
+  public void collect(final Point2D pnt, final int minContention,
+      final Collection<CaptureDisk> covering) {
+    final int cell = this.getRow(pnt.getY()) * this.columns
+        + this.getColumn(pnt.getX());
+    for (int i = this.cellStart[cell]; i < this.cellStart[cell + 1]; ++i) {
+      final int d = this.cellDisks[i];
+      if (this.txers[this.owner[d]].getContention() > minContention
+          && Geometry.covers(pnt, this.disks[d])) {
+        covering.add(this.disks[d]);
+      }
+    }
+  }
+}
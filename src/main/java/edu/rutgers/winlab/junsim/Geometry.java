@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.awt.geom.Point2D;
+import java.util.Collection;
+
+/**
+ * Geometry kernel shared by all of the experiments. Distances are compared in
+ * squared form and nothing here allocates, so these methods are safe to call
+ * from the innermost scoring loops.
+ *
+ * @author Robert Moore
+ */
+public final class Geometry {
+
+  /**
+   * Relative tolerance on the radius of a capture disk when deciding whether it
+   * covers a point. Disk centers, radii and intersection points are all
+   * rounded to float, so a point computed to lie on a disk's boundary can land
+   * just outside it; such a point still counts as covered if it is within this
+   * fraction of the radius beyond the boundary.
+   */
+  public static final double BOUNDARY_TOLERANCE = 1e-5;
+
+  private Geometry() {
+    super();
+  }
+
+  /**
+   * The radius out to which a capture disk covers points, including the
+   * boundary tolerance.
+   *
+   * @param radius
+   *          the radius of the disk.
+   * @return the widened radius.
+   */
+  public static double coverRadius(final double radius) {
+    return radius * (1 + BOUNDARY_TOLERANCE);
+  }
+
+  /**
+   * Squared Euclidean distance between two points.
+   *
+   * @param x1
+   *          x-coordinate of the first point.
+   * @param y1
+   *          y-coordinate of the first point.
+   * @param x2
+   *          x-coordinate of the second point.
+   * @param y2
+   *          y-coordinate of the second point.
+   * @return the squared distance between the points.
+   */
+  public static double distanceSq(final double x1, final double y1,
+      final double x2, final double y2) {
+    final double dx = x1 - x2;
+    final double dy = y1 - y2;
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Determines whether a point lies within (or on) a circle.
+   *
+   * @param cx
+   *          x-coordinate of the circle's center.
+   * @param cy
+   *          y-coordinate of the circle's center.
+   * @param radius
+   *          radius of the circle.
+   * @param x
+   *          x-coordinate of the point.
+   * @param y
+   *          y-coordinate of the point.
+   * @return {@code true} if the point is inside the circle.
+   */
+  public static boolean circleContains(final double cx, final double cy,
+      final double radius, final double x, final double y) {
+    // Quick bounding-box check
+    if (cx - radius > x || cx + radius < x || cy - radius > y
+        || cy + radius < y) {
+      return false;
+    }
+    return distanceSq(cx, cy, x, y) <= radius * radius;
+  }
+
+  /**
+   * Determines whether two circles overlap or touch.
+   *
+   * @param cx1
+   *          x-coordinate of the first center.
+   * @param cy1
+   *          y-coordinate of the first center.
+   * @param r1
+   *          radius of the first circle.
+   * @param cx2
+   *          x-coordinate of the second center.
+   * @param cy2
+   *          y-coordinate of the second center.
+   * @param r2
+   *          radius of the second circle.
+   * @return {@code true} if the circles intersect.
+   */
+  public static boolean circlesIntersect(final double cx1, final double cy1,
+      final double r1, final double cx2, final double cy2, final double r2) {
+    final double sum = r1 + r2;
+    return distanceSq(cx1, cy1, cx2, cy2) <= sum * sum;
+  }
+
+  /**
+   * Returns {@code true} if a point is strictly within {@code range} of at
+   * least one of the positions.
+   *
+   * @param x
+   *          x-coordinate of the point.
+   * @param y
+   *          y-coordinate of the point.
+   * @param xs
+   *          x-coordinates of the positions.
+   * @param ys
+   *          y-coordinates of the positions.
+   * @param count
+   *          the number of positions to check.
+   * @param range
+   *          the range.
+   * @return {@code true} if any position is within range.
+   */
+  public static boolean inRange(final double x, final double y,
+      final float[] xs, final float[] ys, final int count, final double range) {
+    final double rangeSq = range * range;
+    for (int i = 0; i < count; ++i) {
+      if (distanceSq(x, y, xs[i], ys[i]) < rangeSq) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Copies the x-coordinates of some transmitters into an array.
+   *
+   * @param transmitters
+   *          the transmitters.
+   * @return their x-coordinates, in iteration order.
+   */
+  public static float[] getXs(final Collection<Transmitter> transmitters) {
+    final float[] xs = new float[transmitters.size()];
+    int i = 0;
+    for (final Transmitter t : transmitters) {
+      xs[i++] = t.x;
+    }
+    return xs;
+  }
+
+  /**
+   * Copies the y-coordinates of some transmitters into an array.
+   *
+   * @param transmitters
+   *          the transmitters.
+   * @return their y-coordinates, in iteration order.
+   */
+  public static float[] getYs(final Collection<Transmitter> transmitters) {
+    final float[] ys = new float[transmitters.size()];
+    int i = 0;
+    for (final Transmitter t : transmitters) {
+      ys[i++] = t.y;
+    }
+    return ys;
+  }
+
+  /**
+   * Determines whether a capture disk covers a point. The point must be within
+   * the disk and within {@code maxRangeMeters} of at least one of the disk's
+   * transmitters.
+   *
+   * @param p
+   *          the point.
+   * @param d
+   *          the capture disk.
+   * @return {@code true} if the disk covers the point.
+   */
+  public static boolean covers(final Point2D p, final CaptureDisk d) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    final double radius = coverRadius(d.disk.radius);
+    return covers(d.disk.center.x, d.disk.center.y, radius * radius, d.t1.x,
+        d.t1.y, d.t2.x, d.t2.y, p.getX(), p.getY(), rangeSq);
+  }
+
+  /**
+   * The test behind every {@code covers} method, so that all of them agree on
+   * every point.
+   *
+   * @param coverRadiusSq
+   *          the square of the disk's {@link #coverRadius(double)}.
+   */
+  private static boolean covers(final double cx, final double cy,
+      final double coverRadiusSq, final double t1x, final double t1y,
+      final double t2x, final double t2y, final double x, final double y,
+      final double rangeSq) {
+    if (distanceSq(x, y, t1x, t1y) > rangeSq
+        && distanceSq(x, y, t2x, t2y) > rangeSq) {
+      return false;
+    }
+    return distanceSq(x, y, cx, cy) <= coverRadiusSq;
+  }
+
+  /**
+   * Determines whether a disk in a table covers a point.
+   *
+   * @param table
+   *          the disk table.
+   * @param disk
+   *          the index of the disk in the table.
+   * @param x
+   *          x-coordinate of the point.
+   * @param y
+   *          y-coordinate of the point.
+   * @param rangeSq
+   *          the squared maximum range of a transmitter.
+   * @return {@code true} if the disk covers the point.
+   * @see #covers(Point2D, CaptureDisk)
+   */
+  public static boolean covers(final CaptureDiskTable table, final int disk,
+      final double x, final double y, final double rangeSq) {
+    if (x < table.minX[disk] || x > table.maxX[disk] || y < table.minY[disk]
+        || y > table.maxY[disk]) {
+      return false;
+    }
+    final int t1 = table.t1[disk];
+    final int t2 = table.t2[disk];
+    return covers(table.centerX[disk], table.centerY[disk],
+        table.radiusSq[disk], table.txX[t1], table.txY[t1], table.txX[t2],
+        table.txY[t2], x, y, rangeSq);
+  }
+
+  /**
+   * Finds the disks covering a single point. This is the "one point against
+   * many disks" batch entry point.
+   *
+   * @param table
+   *          the disk table.
+   * @param disks
+   *          indices of the disks to test.
+   * @param numDisks
+   *          the number of indices in {@code disks} to test.
+   * @param x
+   *          x-coordinate of the point.
+   * @param y
+   *          y-coordinate of the point.
+   * @param covering
+   *          buffer that receives the indices of the covering disks, or
+   *          {@code null} to only count them. Must hold at least
+   *          {@code numDisks} values.
+   * @return the number of covering disks.
+   */
+  public static int coveringDisks(final CaptureDiskTable table,
+      final int[] disks, final int numDisks, final double x, final double y,
+      final int[] covering) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    int count = 0;
+    for (int i = 0; i < numDisks; ++i) {
+      if (covers(table, disks[i], x, y, rangeSq)) {
+        if (covering != null) {
+          covering[count] = disks[i];
+        }
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the points covered by a single disk. This is the "many points
+   * against one disk" batch entry point.
+   *
+   * @param table
+   *          the disk table.
+   * @param disk
+   *          the index of the disk.
+   * @param xs
+   *          x-coordinates of the points.
+   * @param ys
+   *          y-coordinates of the points.
+   * @param numPoints
+   *          the number of points to test.
+   * @param covered
+   *          buffer that receives the indices of the covered points, or
+   *          {@code null} to only count them. Must hold at least
+   *          {@code numPoints} values.
+   * @return the number of covered points.
+   */
+  public static int coveredPoints(final CaptureDiskTable table,
+      final int disk, final float[] xs, final float[] ys, final int numPoints,
+      final int[] covered) {
+    final double rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+    int count = 0;
+    for (int i = 0; i < numPoints; ++i) {
+      if (covers(table, disk, xs[i], ys[i], rangeSq)) {
+        if (covered != null) {
+          covered[count] = i;
+        }
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Computes the intersection points of two circles.
+   *
+   * @param cx1
+   *          x-coordinate of the first center.
+   * @param cy1
+   *          y-coordinate of the first center.
+   * @param r1
+   *          radius of the first circle.
+   * @param cx2
+   *          x-coordinate of the second center.
+   * @param cy2
+   *          y-coordinate of the second center.
+   * @param r2
+   *          radius of the second circle.
+   * @param points
+   *          buffer of at least 4 values that receives the intersections as
+   *          {@code x1, y1, x2, y2}.
+   * @return 2 if the circles intersect, or 0 if they are too far apart,
+   *         concentric, or one lies entirely within the other.
+   */
+  public static int intersections(final double cx1, final double cy1,
+      final double r1, final double cx2, final double cy2, final double r2,
+      final float[] points) {
+    final double dSq = distanceSq(cx1, cy1, cx2, cy2);
+    final double sum = r1 + r2;
+    // Too far apart to overlap, or the same center
+    if (dSq > sum * sum || dSq == 0) {
+      return 0;
+    }
+    final double dx = cx2 - cx1;
+    final double dy = cy2 - cy1;
+    final double d = Math.sqrt(dSq);
+    final double a = (r1 * r1 - r2 * r2 + d * d) / (2 * d);
+    final double hSq = r1 * r1 - a * a;
+    // One circle is inside the other
+    if (hSq < 0) {
+      return 0;
+    }
+    final double h = Math.sqrt(hSq);
+    final double x3 = cx1 + (a * dx) / d;
+    final double y3 = cy1 + (a * dy) / d;
+
+    points[0] = (float) (x3 + (h * dy) / d);
+    points[1] = (float) (y3 - (h * dx) / d);
+    points[2] = (float) (x3 - (h * dy) / d);
+    points[3] = (float) (y3 + (h * dx) / d);
+    return 2;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lazy-greedy ("CELF") receiver selection over a fixed set of solution points.
+ * <p>
+ * Removing capture disks can only lower the score of a point, so the last
+ * score computed for a point is an upper bound on its current score. Points
+ * are kept in a max-heap by that bound, and only the top of the heap is
+ * re-scored until a point that is already up to date for this round stays on
+ * top. Ties go to the point that came first in the original collection, which
+ * is the same point the exhaustive greedy loop picks.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class LazyGreedy implements ReceiverSelector {
+
+  private static final Logger log = LoggerFactory.getLogger(LazyGreedy.class);
+
+  /**
+   * The solution points, in their original order.
+   */
+  final Point2D[] points;
+
+  /**
+   * Last score computed for each point.
+   */
+  final int[] bound;
+
+  /**
+   * The round in which each point was last scored.
+   */
+  private final int[] scoredRound;
+
+  /**
+   * The current round (one per receiver).
+   */
+  private int round = 0;
+
+  /**
+   * Points still in contention, ordered by highest bound then lowest index.
+   */
+  private final PriorityQueue<Integer> heap;
+
+  /**
+   * Remaining disks to score against.
+   */
+  private final DiskIndex disks;
+
+  /**
+   * Number of points scored so far.
+   */
+  private long evaluations = 0;
+
+  /**
+   * Creates a new selector and scores every point once, using the worker pool.
+   *
+   * @param solutionPoints
+   *          the candidate receiver positions.
+   * @param disks
+   *          the remaining capture disks.
+   * @param workers
+   *          worker threadpool to utilize for the initial scoring.
+   */
+  public LazyGreedy(final Collection<Point2D> solutionPoints,
+      final DiskIndex disks, final ExecutorService workers) {
+    super();
+    this.points = solutionPoints.toArray(new Point2D[solutionPoints.size()]);
+    this.bound = new int[this.points.length];
+    this.scoredRound = new int[this.points.length];
+    this.disks = disks;
+    this.heap = new PriorityQueue<Integer>(Math.max(1, this.points.length),
+        new Comparator<Integer>() {
+          @Override
+          public int compare(final Integer o1, final Integer o2) {
+            final int i1 = o1.intValue();
+            final int i2 = o2.intValue();
+            final int b1 = LazyGreedy.this.bound[i1];
+            final int b2 = LazyGreedy.this.bound[i2];
+            if (b1 != b2) {
+              return b1 > b2 ? -1 : 1;
+            }
+            return i1 < i2 ? -1 : (i1 == i2 ? 0 : 1);
+          }
+        });
+
+    final int numTasks = Math.max(1,
+        Math.min(this.points.length, Main.config.numThreads * 4));
+    final Collection<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < numTasks; ++t) {
+      final int first = (int) ((long) t * this.points.length / numTasks);
+      final int last = (int) ((long) (t + 1) * this.points.length / numTasks);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int i = first; i < last; ++i) {
+            LazyGreedy.this.bound[i] = disks.count(
+                LazyGreedy.this.points[i].getX(),
+                LazyGreedy.this.points[i].getY());
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      final List<Future<Void>> results = workers.invokeAll(tasks);
+      for (final Future<Void> future : results) {
+        future.get();
+      }
+    } catch (final InterruptedException e) {
+      e.printStackTrace();
+    } catch (final ExecutionException e) {
+      e.printStackTrace();
+    }
+    this.evaluations = this.points.length;
+
+    for (int i = 0; i < this.points.length; ++i) {
+      if (this.bound[i] > 0) {
+        this.heap.add(Integer.valueOf(i));
+      }
+    }
+  }
+
+  /**
+   * Selects the best point for the next receiver. The disks it covers are
+   * returned in the receiver but are not removed; the caller must remove them
+   * from the {@code DiskIndex} before the next call.
+   *
+   * @return the next receiver, or {@code null} if no point covers any disk.
+   */
+  @Override
+  public Receiver next() {
+    final long start = this.evaluations;
+    Receiver receiver = null;
+    while (!this.heap.isEmpty()) {
+      final Integer top = this.heap.poll();
+      final int i = top.intValue();
+      if (this.scoredRound[i] == this.round) {
+        receiver = new Receiver();
+        receiver.setLocation(this.points[i]);
+        receiver.coveringDisks = new ArrayList<CaptureDisk>();
+        this.disks.collect(this.points[i].getX(), this.points[i].getY(),
+            receiver.coveringDisks);
+        break;
+      }
+      this.bound[i] = this.disks.count(this.points[i].getX(),
+          this.points[i].getY());
+      this.scoredRound[i] = this.round;
+      ++this.evaluations;
+      // Points with no remaining disks can never be chosen
+      if (this.bound[i] > 0) {
+        this.heap.add(top);
+      }
+    }
+    log.info(String.format("Lazy selection scored %,d of %,d points.",
+        Long.valueOf(this.evaluations - start),
+        Integer.valueOf(this.points.length)));
+    ++this.round;
+    return receiver;
+  }
+
+  /**
+   * Nothing to do: scores are refreshed from the {@code DiskIndex} as needed.
+   */
+  @Override
+  public void removeAll(final Collection<CaptureDisk> covered) {
+    // Bounds stay valid when disks are removed
+  }
+
+  /**
+   * The total number of point scores computed, including the initial scoring.
+   *
+   * @return the number of evaluations.
+   */
+  public long getEvaluations() {
+    return this.evaluations;
+  }
+}
@@ -28,13 +28,15 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
@@ -364,6 +366,10 @@ public class Main {
         task = new AdaptiveFairExperiment(conf, stats, workers);
       } else if ("density".equalsIgnoreCase(config.experimentType)) {
         task = new DensityExperiment(conf, stats, workers);
+      } else if ("sweep".equalsIgnoreCase(config.experimentType)) {
+        task = new SweepExperiment(conf, stats, workers);
+      } else if ("annealing".equalsIgnoreCase(config.experimentType)) {
+        task = new AnnealingExperimentTask(conf, stats, workers);
       }else {
         task = new BasicExperiment(conf, stats, workers);
       } 
@@ -886,6 +892,111 @@ public class Main {
     return txers;
   }
 
+  /**
+   * Computes the capture disks of every pair of transmitters that are close
+   * enough to produce one. Transmitters are bucketed into a grid with cells
+   * {@code 2 * maxRangeMeters} wide, so each transmitter is only paired with
+   * those in the adjacent cells instead of the entire collection.
+   * <p>
+   * The captured transmitters (t1) are split into contiguous blocks that are
+   * paired in parallel on {@code workers}. Each task only ever registers disks
+   * with the transmitters of its own block, so no two threads write to the same
+   * transmitter's disk set. Per-task results are merged on the calling thread.
+   * </p>
+   *
+   * @param transmitters
+   *          the transmitters to pair.
+   * @param workers
+   *          worker threadpool to utilize.
+   * @return all of the capture disks.
+   */
+  static Collection<CaptureDisk> generateCaptureDisks(
+      final Collection<Transmitter> transmitters, final ExecutorService workers) {
+    final long start = System.currentTimeMillis();
+    final float pairRange = 2 * Main.config.maxRangeMeters;
+    final TransmitterGrid grid = new TransmitterGrid(transmitters, pairRange);
+    final Transmitter[] captured = transmitters
+        .toArray(new Transmitter[transmitters.size()]);
+
+    // Several blocks per thread so uneven densities still balance out
+    final int numTasks = Math.max(1, Math.min(captured.length,
+        Main.config.numThreads * 4));
+    final int perTask = (captured.length / numTasks) + 1;
+    final Collection<CaptureDiskTask> tasks = new LinkedList<CaptureDiskTask>();
+    for (int first = 0; first < captured.length; first += perTask) {
+      tasks.add(new CaptureDiskTask(grid, captured, first, Math.min(
+          captured.length, first + perTask), pairRange));
+    }
+
+    final Collection<Collection<CaptureDisk>> results = new LinkedList<Collection<CaptureDisk>>();
+    int numDisks = 0;
+    try {
+      for (final Future<Collection<CaptureDisk>> future : workers
+          .invokeAll(tasks)) {
+        try {
+          final Collection<CaptureDisk> someDisks = future.get();
+          numDisks += someDisks.size();
+          results.add(someDisks);
+        } catch (final ExecutionException e) {
+          log.error("Unable to generate capture disks.", e);
+        }
+      }
+    } catch (final InterruptedException e) {
+      log.error("Interrupted while generating capture disks.", e);
+    }
+
+    final Collection<CaptureDisk> disks = new ArrayList<CaptureDisk>(numDisks);
+    for (final Collection<CaptureDisk> someDisks : results) {
+      disks.addAll(someDisks);
+    }
+    log.info(String.format("Generated %,d capture disks in %,dms.", disks
+        .size(), System.currentTimeMillis() - start));
+    return disks;
+  }
+
+  /**
+   * Generates the capture disks for a contiguous block of captured
+   * transmitters.
+   *
+   * @author Robert Moore
+   */
+  private static final class CaptureDiskTask implements
+      Callable<Collection<CaptureDisk>> {
+    private final TransmitterGrid grid;
+    private final Transmitter[] captured;
+    private final int first;
+    private final int last;
+    private final float pairRange;
+
+    CaptureDiskTask(final TransmitterGrid grid, final Transmitter[] captured,
+        final int first, final int last, final float pairRange) {
+      super();
+      this.grid = grid;
+      this.captured = captured;
+      this.first = first;
+      this.last = last;
+      this.pairRange = pairRange;
+    }
+
+    @Override
+    public Collection<CaptureDisk> call() {
+      final Collection<CaptureDisk> disks = new ArrayList<CaptureDisk>();
+      final Collection<Transmitter> neighbors = new ArrayList<Transmitter>();
+      for (int i = this.first; i < this.last; ++i) {
+        final Transmitter t1 = this.captured[i];
+        neighbors.clear();
+        this.grid.getNeighbors(t1.x, t1.y, this.pairRange, neighbors);
+        for (final Transmitter t2 : neighbors) {
+          final CaptureDisk someDisk = Main.generateCaptureDisk(t1, t2);
+          if (someDisk != null) {
+            disks.add(someDisk);
+          }
+        }
+      }
+      return disks;
+    }
+  }
+
   /**
    * Computes the capture disk of transmitter t1. Uses the constant parameter
    * Beta from the global configuration.
@@ -899,6 +1010,27 @@ public class Main {
    */
   static CaptureDisk generateCaptureDisk(final Transmitter t1,
       final Transmitter t2) {
+    final CaptureDisk captureDisk = Main.createCaptureDisk(t1, t2);
+    if (captureDisk != null) {
+      t1.addDisk(captureDisk);
+    }
+    return captureDisk;
+  }
+
+  /**
+   * Computes the capture disk of transmitter t1, like
+   * {@link #generateCaptureDisk(Transmitter, Transmitter)}, without adding it
+   * to the disks of t1.
+   * 
+   * @param t1
+   *          the captured transmitter.
+   * @param t2
+   *          the uncaptured (colliding) transmitter.
+   * @return the capture disk of transmitter t1, else {@code null} if none
+   *         exists.
+   */
+  static CaptureDisk createCaptureDisk(final Transmitter t1,
+      final Transmitter t2) {
     if (t1 == t2 || t1.equals(t2)) {
       return null;
     }
@@ -929,123 +1061,71 @@ public class Main {
     captureDisk.disk.center.x = (float) centerX;
     captureDisk.disk.center.y = (float) centerY;
 
-    t1.addDisk(captureDisk);
-
     return captureDisk;
   }
 
   /**
-   * Generates the intersection points of two circles, IF they intersect.
+   * Creates the receiver selector configured by {@code selectionMode}.
    * 
-   * @param cd1
-   *          the first circle.
-   * @param cd2
-   *          the second circle.
-   * @return a {@code Collection} containing the intersection points, or
-   *         {@code null} if there are no intersections.
+   * @param solutionPoints
+   *          the candidate receiver positions.
+   * @param disks
+   *          index over the remaining capture disks.
+   * @param table
+   *          the table indexed by {@code disks}.
+   * @param workers
+   *          worker threadpool to utilize.
+   * @return the selector, or {@code null} if every point should be rescored
+   *         for each receiver ("greedy").
    */
-  static Collection<Point2D> generateIntersections(final CaptureDisk cd1,
-      final CaptureDisk cd2) {
-    // If these are the same disks, don't check their intersection
-    if (cd1.equals(cd2) || cd1 == cd2) {
-      return null;
+  static ReceiverSelector createSelector(
+      final Collection<Point2D> solutionPoints, final DiskIndex disks,
+      final CaptureDiskTable table, final ExecutorService workers) {
+    if ("lazy".equalsIgnoreCase(Main.config.selectionMode)) {
+      return new LazyGreedy(solutionPoints, disks, workers);
     }
-
-    double d = Math.sqrt(Math.pow(
-        cd1.disk.getCenterX() - cd2.disk.getCenterX(), 2)
-        + Math.pow(cd1.disk.getCenterY() - cd2.disk.getCenterY(), 2));
-
-    double r1 = cd1.disk.radius;
-    double r2 = cd2.disk.radius;
-    double d1 = (Math.pow(r1, 2) - Math.pow(r2, 2) + Math.pow(d, 2)) / (2 * d);
-
-    // Circles are too far apart to overlap.
-    if (d > (r1 + r2)) {
-      return null;
+    if ("incidence".equalsIgnoreCase(Main.config.selectionMode)) {
+      return new CoverageIncidence(solutionPoints, disks, table, workers);
     }
-
-    double h = Math.sqrt(Math.pow(r1, 2) - Math.pow(d1, 2));
-
-    double x3 = cd1.disk.getCenterX()
-        + (d1 * (cd2.disk.getCenterX() - cd1.disk.getCenterX())) / d;
-
-    double y3 = cd1.disk.getCenterY()
-        + (d1 * (cd2.disk.getCenterY() - cd1.disk.getCenterY())) / d;
-
-    double x4i = x3 + (h * (cd2.disk.getCenterY() - cd1.disk.getCenterY())) / d;
-    double y4i = y3 - (h * (cd2.disk.getCenterX() - cd1.disk.getCenterX())) / d;
-    double x4ii = x3 - (h * (cd2.disk.getCenterY() - cd1.disk.getCenterY()))
-        / d;
-    double y4ii = y3 + (h * (cd2.disk.getCenterX() - cd1.disk.getCenterX()))
-        / d;
-
-    if (Double.isNaN(x4i) || Double.isNaN(y4i) || Double.isNaN(x4ii)
-        || Double.isNaN(y4ii)) {
-      return null;
-    }
-
-    LinkedList<Point2D> points = new LinkedList<Point2D>();
-    if (x4i >= 0 && x4i <= Main.config.universeWidth && y4i >= 0
-        && y4i <= Main.config.universeHeight) {
-      points.add(new Point2D.Float((float) x4i, (float) y4i));
-    }
-    if (x4ii >= 0 && x4ii <= Main.config.universeWidth && y4ii >= 0
-        && y4ii <= Main.config.universeHeight) {
-      points.add(new Point2D.Float((float) x4ii, (float) y4ii));
-    }
-    return points;
+    return null;
   }
 
   /**
-   * Returns a collection of transmitters and capture disks, in that order, that
-   * are "clones" of the transmitter
-   * collection provided.
+   * Generates the intersection points of two circles, IF they intersect. Only
+   * points within the universe are kept.
    * 
-   * @param txers
-   *          the transmitters to "clone".
-   * @return an array containing two elements: a collection of "cloned"
-   *         transmitters, and a collection of "cloned"
-   *         capture disks, respectively.
+   * @param cd1
+   *          the first circle.
+   * @param cd2
+   *          the second circle.
+   * @param points
+   *          buffer of at least 4 values that receives the intersection points
+   *          as {@code x1, y1, x2, y2}.
+   * @return the number of intersection points written to {@code points}.
    */
-  public static Object[] clone(final Collection<Transmitter> txers) {
-    final HashMap<Transmitter, Transmitter> copyTxers = new HashMap<Transmitter, Transmitter>();
-    final HashMap<CaptureDisk,CaptureDisk> cloneToOrig = new HashMap<CaptureDisk,CaptureDisk>();
-
-    for (Transmitter tx : txers) {
-
-      Transmitter ctx = new Transmitter();
-      ctx.x = tx.x;
-      ctx.y = tx.y;
-      copyTxers.put(ctx, ctx);
-
+  static int generateIntersections(final CaptureDisk cd1,
+      final CaptureDisk cd2, final float[] points) {
+    // If these are the same disks, don't check their intersection
+    if (cd1 == cd2 || cd1.equals(cd2)) {
+      return 0;
     }
-    for (Transmitter tx : txers) {
-
-      for (CaptureDisk d : tx.getDisks()) {
-        if (!cloneToOrig.containsValue(d)) {
-          CaptureDisk clone = new CaptureDisk();
-          clone.disk = d.disk;
-          clone.t1 = copyTxers.get(d.t1);
-          //
-          if (clone.t1 == null) {
-            log.error("WTF?");
-          }
-          clone.t2 = copyTxers.get(d.t2);
-          if (clone.t2 == null) {
-            Transmitter ctx = new Transmitter();
-            ctx.x = d.t2.x;
-            ctx.y = d.t2.y;
-            // copyTxers.put(ctx, ctx);
-            clone.t2 = ctx;
-          }
-          clone.t1.addDisk(clone);
-          cloneToOrig.put(clone,d);
-        }
-      }
 
+    final int found = Geometry.intersections(cd1.disk.center.x,
+        cd1.disk.center.y, cd1.disk.radius, cd2.disk.center.x,
+        cd2.disk.center.y, cd2.disk.radius, points);
+
+    int kept = 0;
+    for (int i = 0; i < found; ++i) {
+      final float x = points[2 * i];
+      final float y = points[2 * i + 1];
+      if (x >= 0 && x <= Main.config.universeWidth && y >= 0
+          && y <= Main.config.universeHeight) {
+        points[2 * kept] = x;
+        points[2 * kept + 1] = y;
+        ++kept;
+      }
     }
-
-    return new Object[] { copyTxers.values(), cloneToOrig };
+    return kept;
   }
 
   public static void saveImage(final FileRenderer display, final String fileName) {
@@ -0,0 +1,614 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Computes the depth of a point (the number of capture disks covering it)
+ * directly from the transmitter positions, without any {@code CaptureDisk}.
+ * <p>
+ * The capture disk of (t1, t2) is the Apollonius circle of the two
+ * transmitters, so a point p lies within it exactly when
+ * {@code dist(p,t1) <= beta * dist(p,t2)}. Such a point is always closer to t1
+ * than to t2, so the range requirement of {@link Geometry#covers} reduces to
+ * {@code dist(p,t1) <= maxRangeMeters}. Sorting the nearby transmitters by
+ * distance from p turns the depth into, for each t1 in range, a count of the
+ * t2 at least {@code dist(p,t1) / beta} away.
+ * </p>
+ * <p>
+ * A disk only exists when its transmitters are at most
+ * {@code 2 * maxRangeMeters} apart (see {@link Main#createCaptureDisk}). Any
+ * t2 no farther than {@code 2 * maxRangeMeters - dist(p,t1)} from p satisfies
+ * that by the triangle inequality and is counted in bulk; the few beyond it are
+ * checked individually.
+ * </p>
+ * <p>
+ * With k transmitters within {@code 3 * maxRangeMeters} of a point, scoring it
+ * costs O(k log k) to sort them, plus for each t1 in range a pass over the
+ * transmitters in the ring {@code (2R - dist(p,t1), 2R + dist(p,t1)]}, and,
+ * when counting only remaining disks, over the shorter of t1's covered
+ * partners and the transmitters far enough to be counted. That is O(k^2) in
+ * the worst case, but never more as receivers are placed.
+ * </p>
+ * <p>
+ * Covered disks are remembered as (t1, t2) pairs and subtracted from the depth,
+ * and the disks covering a point can be created on demand, so an experiment
+ * that scores this way never has to hold the full set of disks. Queries may
+ * run concurrently, but removals must not overlap with them.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class PairFreeScorer {
+
+  /**
+   * The transmitters, sorted by x-coordinate.
+   */
+  private final Transmitter[] txers;
+
+  /**
+   * X-coordinate of each transmitter, in ascending order.
+   */
+  private final double[] txX;
+
+  /**
+   * Y-coordinate of each transmitter.
+   */
+  private final double[] txY;
+
+  /**
+   * Index of each transmitter in {@code txers}.
+   */
+  private final Map<Transmitter, Integer> txIndex = new IdentityHashMap<Transmitter, Integer>();
+
+  /**
+   * Colliding transmitters (t2) of the covered disks, by captured transmitter
+   * (t1).
+   */
+  private final int[][] covered;
+
+  /**
+   * Number of valid entries in each row of {@code covered}.
+   */
+  private final int[] numCovered;
+
+  /**
+   * The rows of {@code covered} as bitsets over the transmitter indices, 64 to
+   * a word, allocated on the first covered disk of a row.
+   */
+  private final long[][] coveredBits;
+
+  /**
+   * Number of capture disks of each transmitter, as captured transmitter.
+   */
+  private final int[] numDisks;
+
+  /**
+   * Total number of capture disks.
+   */
+  private int totalDisks = 0;
+
+  /**
+   * Number of capture disks recorded as covered.
+   */
+  private int totalCovered = 0;
+
+  /**
+   * Whether the transmitters hold their generated disks, which are then
+   * returned by the collect methods instead of new ones.
+   */
+  private boolean storedDisks = false;
+
+  /**
+   * The square of {@code beta}.
+   */
+  private final double betaSq;
+
+  /**
+   * The maximum transmitter range.
+   */
+  private final double range;
+
+  /**
+   * Per-thread buffers for the nearby transmitters of a point.
+   */
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch(PairFreeScorer.this.txers.length);
+    }
+  };
+
+  /**
+   * Buffers for a single query.
+   */
+  private static final class Scratch {
+    /**
+     * Indices of the nearby transmitters.
+     */
+    final int[] near;
+    /**
+     * Squared distance of each nearby transmitter, in the order of
+     * {@code near}.
+     */
+    final double[] distSq;
+    /**
+     * The same squared distances, in ascending order.
+     */
+    final double[] sorted;
+    /**
+     * Transmitter index for each entry of {@code sorted}.
+     */
+    final int[] order;
+
+    Scratch(final int size) {
+      this.near = new int[size];
+      this.distSq = new double[size];
+      this.sorted = new double[size];
+      this.order = new int[size];
+    }
+  }
+
+  /**
+   * Creates a new scorer for the transmitters, using the current
+   * {@code beta} and {@code maxRangeMeters}.
+   *
+   * @param transmitters
+   *          the transmitters.
+   */
+  public PairFreeScorer(final Collection<Transmitter> transmitters) {
+    super();
+    this.txers = transmitters.toArray(new Transmitter[transmitters.size()]);
+    final double[] keys = new double[this.txers.length];
+    for (int i = 0; i < keys.length; ++i) {
+      keys[i] = this.txers[i].x;
+    }
+    // Sort by x so the nearby transmitters of a point are a contiguous run
+    final Transmitter[] byX = new Transmitter[this.txers.length];
+    Arrays.sort(keys);
+    final int[] fill = new int[this.txers.length];
+    for (final Transmitter t : this.txers) {
+      final int slot = PairFreeScorer.lowerBound(keys, keys.length, t.x);
+      byX[slot + fill[slot]++] = t;
+    }
+    System.arraycopy(byX, 0, this.txers, 0, byX.length);
+
+    this.txX = new double[this.txers.length];
+    this.txY = new double[this.txers.length];
+    for (int i = 0; i < this.txers.length; ++i) {
+      this.txX[i] = this.txers[i].x;
+      this.txY[i] = this.txers[i].y;
+      this.txIndex.put(this.txers[i], Integer.valueOf(i));
+    }
+    this.covered = new int[this.txers.length][];
+    this.numCovered = new int[this.txers.length];
+    this.coveredBits = new long[this.txers.length][];
+    this.betaSq = (double) Main.config.beta * Main.config.beta;
+    this.range = Main.config.maxRangeMeters;
+
+    // Every pair close enough has a disk each way
+    this.numDisks = new int[this.txers.length];
+    for (int i = 0; i < this.txers.length; ++i) {
+      for (int j = i + 1; j < this.txers.length
+          && this.txX[j] - this.txX[i] <= 2 * this.range; ++j) {
+        if (this.isPair(i, j)) {
+          ++this.numDisks[i];
+          ++this.numDisks[j];
+          this.totalDisks += 2;
+        }
+      }
+    }
+  }
+
+  /**
+   * Index of the first value in {@code values[0..n)} that is not less than
+   * {@code key}.
+   */
+  private static int lowerBound(final double[] values, final int n,
+      final double key) {
+    int low = 0;
+    int high = n;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Index of the first value in {@code values[0..n)} that is greater than
+   * {@code key}.
+   */
+  private static int upperBound(final double[] values, final int n,
+      final double key) {
+    int low = 0;
+    int high = n;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] <= key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Collects the transmitters within {@code 3 * maxRangeMeters} of a point
+   * (the farthest a colliding transmitter can be) and sorts them by distance.
+   *
+   * @return the number of nearby transmitters.
+   */
+  private int gather(final double x, final double y, final Scratch s) {
+    final double reach = 3 * this.range;
+    final double reachSq = reach * reach;
+    int n = 0;
+    for (int i = PairFreeScorer.lowerBound(this.txX, this.txX.length, x
+        - reach); i < this.txX.length && this.txX[i] <= x + reach; ++i) {
+      final double d = Geometry.distanceSq(x, y, this.txX[i], this.txY[i]);
+      if (d <= reachSq) {
+        s.near[n] = i;
+        s.distSq[n] = d;
+        s.sorted[n] = d;
+        ++n;
+      }
+    }
+    Arrays.sort(s.sorted, 0, n);
+    // Place each transmitter at the first free slot for its distance
+    Arrays.fill(s.order, 0, n, -1);
+    for (int j = 0; j < n; ++j) {
+      int slot = PairFreeScorer.lowerBound(s.sorted, n, s.distSq[j]);
+      while (s.order[slot] >= 0) {
+        ++slot;
+      }
+      s.order[slot] = s.near[j];
+    }
+    return n;
+  }
+
+  /**
+   * Index of the first sorted distance at which a colliding transmitter is far
+   * enough away for a captured transmitter at {@code d1Sq}.
+   */
+  private int firstCaptured(final Scratch s, final int n, final double d1Sq) {
+    int low = 0;
+    int high = n;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (this.betaSq * s.sorted[mid] < d1Sq) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Determines whether two transmitters are close enough to have a capture
+   * disk.
+   */
+  private boolean isPair(final int t1, final int t2) {
+    final double pairRange = 2 * this.range;
+    return Geometry.distanceSq(this.txX[t1], this.txY[t1], this.txX[t2],
+        this.txY[t2]) <= pairRange * pairRange
+        && !(this.txX[t1] == this.txX[t2] && this.txY[t1] == this.txY[t2]);
+  }
+
+  /**
+   * Counts the disks of a captured transmitter that cover the point.
+   *
+   * @param includeCovered
+   *          whether disks that were already covered are counted.
+   */
+  private int depthOf(final int t1, final double x, final double y,
+      final double d1Sq, final Scratch s, final int n,
+      final boolean includeCovered) {
+    final int first = this.firstCaptured(s, n, d1Sq);
+    final double d1 = Math.sqrt(d1Sq);
+    final double inner = 2 * this.range - d1;
+    final double outer = 2 * this.range + d1;
+    // Every colliding transmitter within "inner" is close enough to t1
+    final int bulk = PairFreeScorer.upperBound(s.sorted, n, inner * inner);
+    int depth = Math.max(0, bulk - first);
+    if (d1Sq == 0) {
+      // t1 itself, and anything on top of it, has no disk
+      depth -= PairFreeScorer.upperBound(s.sorted, n, 0);
+    }
+    final double outerSq = outer * outer;
+    for (int j = Math.max(first, bulk); j < n && s.sorted[j] <= outerSq; ++j) {
+      if (this.isPair(t1, s.order[j])) {
+        ++depth;
+      }
+    }
+    if (!includeCovered && this.numCovered[t1] > 0) {
+      // Covered partners are within "outer" too, so test whichever is shorter
+      final int end = PairFreeScorer.upperBound(s.sorted, n, outerSq);
+      if (this.numCovered[t1] < end - first) {
+        for (int c = 0; c < this.numCovered[t1]; ++c) {
+          final int t2 = this.covered[t1][c];
+          if (this.betaSq
+              * Geometry.distanceSq(x, y, this.txX[t2], this.txY[t2]) >= d1Sq) {
+            --depth;
+          }
+        }
+      } else {
+        for (int j = first; j < end; ++j) {
+          if (this.isCovered(t1, s.order[j])) {
+            --depth;
+          }
+        }
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Counts the remaining (not yet covered) capture disks that cover a point.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @return the number of covering disks.
+   */
+  public int count(final double x, final double y) {
+    final Scratch s = this.scratch.get();
+    final int n = this.gather(x, y, s);
+    final double rangeSq = this.range * this.range;
+    int count = 0;
+    for (int j = 0; j < n && s.sorted[j] <= rangeSq; ++j) {
+      count += this.depthOf(s.order[j], x, y, s.sorted[j], s, n, false);
+    }
+    return count;
+  }
+
+  /**
+   * Counts every capture disk covering a point, covered or not, grouped by the
+   * captured transmitter.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param captured
+   *          receives the captured transmitters with at least one covering
+   *          disk. Must hold at least {@code size()} values.
+   * @param counts
+   *          receives the number of covering disks of each transmitter in
+   *          {@code captured}.
+   * @return the number of entries written to {@code captured}.
+   */
+  public int countByCaptured(final double x, final double y,
+      final Transmitter[] captured, final int[] counts) {
+    final Scratch s = this.scratch.get();
+    final int n = this.gather(x, y, s);
+    final double rangeSq = this.range * this.range;
+    int numCaptured = 0;
+    for (int j = 0; j < n && s.sorted[j] <= rangeSq; ++j) {
+      final int depth = this.depthOf(s.order[j], x, y, s.sorted[j], s, n,
+          true);
+      if (depth > 0) {
+        captured[numCaptured] = this.txers[s.order[j]];
+        counts[numCaptured] = depth;
+        ++numCaptured;
+      }
+    }
+    return numCaptured;
+  }
+
+  /**
+   * Determines whether the disk of a pair has been recorded as covered.
+   */
+  private boolean isCovered(final int t1, final int t2) {
+    final long[] bits = this.coveredBits[t1];
+    return bits != null && (bits[t2 >>> 6] & (1L << t2)) != 0;
+  }
+
+  /**
+   * The disk of a pair: the one generated for the captured transmitter if
+   * there is one, else a new one.
+   */
+  private CaptureDisk diskOf(final int t1, final int t2) {
+    if (this.storedDisks) {
+      for (final CaptureDisk d : this.txers[t1].getDisks()) {
+        if (d.t2 == this.txers[t2]) {
+          return d;
+        }
+      }
+    }
+    return Main.createCaptureDisk(this.txers[t1], this.txers[t2]);
+  }
+
+  /**
+   * Finds the capture disks covering a point.
+   *
+   * @param includeCovered
+   *          whether disks that were already covered are added.
+   * @param minContention
+   *          only disks of transmitters with a higher contention are added.
+   */
+  private int collect(final double x, final double y,
+      final boolean includeCovered, final int minContention,
+      final Collection<CaptureDisk> covering) {
+    final Scratch s = this.scratch.get();
+    final int n = this.gather(x, y, s);
+    final double rangeSq = this.range * this.range;
+    int count = 0;
+    for (int j = 0; j < n && s.sorted[j] <= rangeSq; ++j) {
+      final int t1 = s.order[j];
+      if (this.txers[t1].getContention() <= minContention) {
+        continue;
+      }
+      final double outer = 2 * this.range + Math.sqrt(s.sorted[j]);
+      final double outerSq = outer * outer;
+      for (int k = this.firstCaptured(s, n, s.sorted[j]); k < n
+          && s.sorted[k] <= outerSq; ++k) {
+        final int t2 = s.order[k];
+        if (!this.isPair(t1, t2)
+            || (!includeCovered && this.isCovered(t1, t2))) {
+          continue;
+        }
+        final CaptureDisk disk = this.diskOf(t1, t2);
+        if (disk != null) {
+          covering.add(disk);
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the remaining (not yet covered) capture disks that cover a point.
+   * The disks are new objects unless {@link #useStoredDisks()} was called.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param covering
+   *          the collection to add the covering disks to.
+   * @return the number of covering disks.
+   */
+  public int collect(final double x, final double y,
+      final Collection<CaptureDisk> covering) {
+    return this.collect(x, y, false, Integer.MIN_VALUE, covering);
+  }
+
+  /**
+   * Finds every capture disk covering a point, covered or not, whose
+   * captured transmitter has a contention above {@code minContention}. The
+   * disks are new objects unless {@link #useStoredDisks()} was called.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param minContention
+   *          only disks of transmitters with a higher contention are added.
+   * @param covering
+   *          the collection to add the covering disks to.
+   * @return the number of covering disks.
+   */
+  public int collectCaptured(final double x, final double y,
+      final int minContention, final Collection<CaptureDisk> covering) {
+    return this.collect(x, y, true, minContention, covering);
+  }
+
+  /**
+   * Records disks as covered, so they no longer count towards the depth of any
+   * point. Disks that are already covered are ignored.
+   *
+   * @param removed
+   *          the covered disks.
+   */
+  public void removeAll(final Collection<CaptureDisk> removed) {
+    for (final CaptureDisk d : removed) {
+      final Integer t1 = this.txIndex.get(d.t1);
+      final Integer t2 = this.txIndex.get(d.t2);
+      if (t1 == null || t2 == null
+          || this.isCovered(t1.intValue(), t2.intValue())) {
+        continue;
+      }
+      final int i = t1.intValue();
+      ++this.totalCovered;
+      if (this.covered[i] == null) {
+        this.covered[i] = new int[4];
+        this.coveredBits[i] = new long[(this.txers.length + 63) >>> 6];
+      } else if (this.numCovered[i] == this.covered[i].length) {
+        this.covered[i] = Arrays.copyOf(this.covered[i],
+            this.covered[i].length * 2);
+      }
+      this.covered[i][this.numCovered[i]++] = t2.intValue();
+      this.coveredBits[i][t2.intValue() >>> 6] |= 1L << t2.intValue();
+    }
+  }
+
+  /**
+   * Makes the collect methods return the disks generated for the transmitters
+   * (see {@link Transmitter#getDisks()}), so that a {@link CaptureDiskTable}
+   * of them can be kept up to date with the disks the scorer covers. Which
+   * disks cover a point is still decided by the scorer.
+   */
+  public void useStoredDisks() {
+    this.storedDisks = true;
+  }
+
+  /**
+   * Credits each transmitter with the number of its capture disks, for runs
+   * that never generate the disks, so that {@link Transmitter#getContention()}
+   * is the same either way.
+   */
+  public void addUnstoredDisks() {
+    for (int i = 0; i < this.txers.length; ++i) {
+      this.txers[i].addUnstoredDisks(this.numDisks[i]);
+    }
+  }
+
+  /**
+   * The total number of capture disks.
+   *
+   * @return the number of disks, covered or not.
+   */
+  public int getNumDisks() {
+    return this.totalDisks;
+  }
+
+  /**
+   * The number of capture disks not yet covered.
+   *
+   * @return the number of remaining disks.
+   */
+  public int getNumRemaining() {
+    return this.totalDisks - this.totalCovered;
+  }
+
+  /**
+   * The number of remaining disks, from the table if there is one, else from
+   * the scorer.
+   *
+   * @param table
+   *          the capture disks, or {@code null} if they were not generated.
+   * @param scorer
+   *          the scorer, used if there is no table.
+   * @return the number of remaining disks.
+   */
+  static int remaining(final CaptureDiskTable table,
+      final PairFreeScorer scorer) {
+    return table != null ? table.size() : scorer.getNumRemaining();
+  }
+
+  /**
+   * The number of transmitters being scored.
+   *
+   * @return the number of transmitters.
+   */
+  public int size() {
+    return this.txers.length;
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out batches of solution points to the tasks scoring them, so that no
+ * task is left with a fixed chunk of expensive points while the others sit
+ * idle.
+ * <p>
+ * Batches are claimed from a shared cursor ("guided self-scheduling"): each
+ * batch is a fraction of the points that are left, so batches start large and
+ * shrink towards the end of the pass, where they balance out the stragglers.
+ * A task always claims batches in increasing order, so among equally-scored
+ * points it sees the one with the lowest index first. Comparing indices when
+ * combining the results of the tasks therefore picks the same point as a
+ * single sequential pass.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class PointBatches {
+
+  /**
+   * Smallest batch handed out, so the cursor is not contended point by point.
+   */
+  private static final int MIN_BATCH = 16;
+
+  /**
+   * X-coordinate of each point, in the original iteration order.
+   */
+  private final float[] xs;
+
+  /**
+   * Y-coordinate of each point.
+   */
+  private final float[] ys;
+
+  /**
+   * Score recorded for each point by the task that claimed it.
+   */
+  private final int[] scores;
+
+  /**
+   * Index of the first point not yet handed out.
+   */
+  private final AtomicInteger cursor = new AtomicInteger(0);
+
+  /**
+   * Number of tasks sharing the points.
+   */
+  private final int numTasks;
+
+  /**
+   * Points that should be dropped from the collection after this pass.
+   */
+  private final boolean[] discarded;
+
+  /**
+   * Creates a new set of batches over the points.
+   *
+   * @param solutionPoints
+   *          the points to score.
+   * @param numTasks
+   *          the number of tasks that will share the points.
+   */
+  public PointBatches(final Collection<? extends Point2D> solutionPoints,
+      final int numTasks) {
+    super();
+    final int size = solutionPoints.size();
+    this.xs = new float[size];
+    this.ys = new float[size];
+    int n = 0;
+    if (solutionPoints instanceof CandidateStore) {
+      final CandidateStore store = (CandidateStore) solutionPoints;
+      for (int i = 0; i < store.capacity(); ++i) {
+        if (store.isLive(i)) {
+          this.xs[n] = store.getX(i);
+          this.ys[n] = store.getY(i);
+          ++n;
+        }
+      }
+    } else {
+      for (final Point2D p : solutionPoints) {
+        this.xs[n] = (float) p.getX();
+        this.ys[n] = (float) p.getY();
+        ++n;
+      }
+    }
+    this.scores = new int[size];
+    Arrays.fill(this.scores, -1);
+    this.numTasks = Math.max(1, numTasks);
+    this.discarded = new boolean[size];
+  }
+
+  /**
+   * Claims the next batch of points.
+   *
+   * @param batch
+   *          receives the first index (inclusive) and last index (exclusive)
+   *          of the batch.
+   * @return {@code true} if a batch was claimed, or {@code false} if every
+   *         point has already been handed out.
+   */
+  public boolean next(final int[] batch) {
+    while (true) {
+      final int start = this.cursor.get();
+      final int left = this.xs.length - start;
+      if (left <= 0) {
+        return false;
+      }
+      final int size = Math.min(left,
+          Math.max(MIN_BATCH, left / (2 * this.numTasks)));
+      if (this.cursor.compareAndSet(start, start + size)) {
+        batch[0] = start;
+        batch[1] = start + size;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * The x-coordinate of a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @return its x-coordinate.
+   */
+  public float getX(final int index) {
+    return this.xs[index];
+  }
+
+  /**
+   * The y-coordinate of a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @return its y-coordinate.
+   */
+  public float getY(final int index) {
+    return this.ys[index];
+  }
+
+  /**
+   * Creates a new {@code Point2D} for a point.
+   *
+   * @param index
+   *          the index of the point.
+   * @return the point.
+   */
+  public Point2D get(final int index) {
+    return new Point2D.Float(this.xs[index], this.ys[index]);
+  }
+
+  /**
+   * Records the score of a point. Only the task that claimed the point may
+   * score it.
+   *
+   * @param index
+   *          the index of the point.
+   * @param score
+   *          its score.
+   */
+  public void setScore(final int index, final int score) {
+    this.scores[index] = score;
+  }
+
+  /**
+   * The score recorded for a point. Only valid once every task has finished.
+   *
+   * @param index
+   *          the index of the point.
+   * @return its score, or -1 if it was never scored.
+   */
+  public int getScore(final int index) {
+    return this.scores[index];
+  }
+
+  /**
+   * Marks a point to be dropped. Only the task that claimed the point may
+   * discard it.
+   *
+   * @param index
+   *          the index of the point.
+   */
+  public void discard(final int index) {
+    this.discarded[index] = true;
+  }
+
+  /**
+   * The points that were not discarded, in their original order. Only valid
+   * once every task has finished.
+   *
+   * @return the remaining points.
+   */
+  public CandidateStore remaining() {
+    final CandidateStore remaining = new CandidateStore(this.xs.length);
+    for (int i = 0; i < this.xs.length; ++i) {
+      if (!this.discarded[i]) {
+        remaining.add(this.xs[i], this.ys[i]);
+      }
+    }
+    return remaining;
+  }
+
+  /**
+   * The total number of points.
+   *
+   * @return the number of points.
+   */
+  public int size() {
+    return this.xs.length;
+  }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Branch-and-bound search of the universe for the point covered by the most
+ * capture disks.
+ * <p>
+ * The universe is split into a quadtree of square-ish cells. For each cell, the
+ * disks that cover all of it give a lower bound on the score of any point in
+ * it, and the disks that cover some of it give an upper bound. The center of
+ * every cell is scored exactly, and a cell is only split further while its
+ * upper bound can still beat the best center found so far. A cell is finished
+ * when its bounds meet (its center is as good as any of its points), or when it
+ * is smaller than {@code quadtreeResolution}.
+ * </p>
+ * <p>
+ * Each level of the tree is split between tasks on the worker pool. The
+ * receiver's {@code scoreBound} is the largest upper bound of any cell that
+ * could not be ruled out, so the difference to its score is the most any other
+ * point could improve on it.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class QuadtreeSearch implements ReceiverSelector {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(QuadtreeSearch.class);
+
+  /**
+   * Relative margin on the containment tests, so that rounding can only
+   * loosen the bounds.
+   */
+  private static final double MARGIN = 1e-6;
+
+  /**
+   * Number of tasks per worker thread for each level.
+   */
+  private static final int TASKS_PER_THREAD = 4;
+
+  /**
+   * A cell of the quadtree.
+   */
+  private static final class Cell {
+    final double minX;
+
+    final double minY;
+
+    final double width;
+
+    final double height;
+
+    /**
+     * Number of disks covering the whole cell.
+     */
+    final int contained;
+
+    /**
+     * Disks covering only part of the cell.
+     */
+    final int[] partial;
+
+    Cell(final double minX, final double minY, final double width,
+        final double height, final int contained, final int[] partial) {
+      this.minX = minX;
+      this.minY = minY;
+      this.width = width;
+      this.height = height;
+      this.contained = contained;
+      this.partial = partial;
+    }
+
+    int upperBound() {
+      return this.contained + this.partial.length;
+    }
+  }
+
+  /**
+   * Splits some cells of one level into their children.
+   */
+  private final class LevelTask implements Callable<Void> {
+    final List<Cell> cells;
+
+    final List<Cell> children = new ArrayList<Cell>();
+
+    int maxScore;
+
+    float maxX;
+
+    float maxY;
+
+    /**
+     * Largest upper bound of a cell at the resolution limit.
+     */
+    int maxOpen = 0;
+
+    LevelTask(final List<Cell> cells, final int maxScore) {
+      this.cells = cells;
+      this.maxScore = maxScore;
+    }
+
+    @Override
+    public Void call() {
+      final int[] scratch = new int[2];
+      for (final Cell cell : this.cells) {
+        if (cell.upperBound() <= this.maxScore) {
+          continue;
+        }
+        final double halfWidth = cell.width / 2;
+        final double halfHeight = cell.height / 2;
+        for (int q = 0; q < 4; ++q) {
+          final Cell child = QuadtreeSearch.this.split(cell,
+              cell.minX + (q & 1) * halfWidth, cell.minY + (q >> 1)
+                  * halfHeight, halfWidth, halfHeight);
+          if (child.upperBound() <= this.maxScore) {
+            continue;
+          }
+          final int score = QuadtreeSearch.this.scoreCenter(child, scratch);
+          if (score > this.maxScore) {
+            this.maxScore = score;
+            this.maxX = Float.intBitsToFloat(scratch[0]);
+            this.maxY = Float.intBitsToFloat(scratch[1]);
+          }
+          if (child.partial.length == 0) {
+            // Every point of the cell has the center's score
+            continue;
+          }
+          if (Math.max(halfWidth, halfHeight) <= Main.config.quadtreeResolution) {
+            this.maxOpen = Math.max(this.maxOpen, child.upperBound());
+            continue;
+          }
+          this.children.add(child);
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The capture disks.
+   */
+  private final CaptureDiskTable table;
+
+  /**
+   * Index over the remaining capture disks.
+   */
+  private final DiskIndex disks;
+
+  /**
+   * Worker threadpool to split the cells on.
+   */
+  private final ExecutorService workers;
+
+  /**
+   * Square of the maximum range of a transmitter.
+   */
+  private final double rangeSq;
+
+  /**
+   * Creates a new search over the remaining disks of a table.
+   *
+   * @param table
+   *          the capture disks.
+   * @param disks
+   *          index over the remaining capture disks.
+   * @param workers
+   *          worker threadpool to utilize.
+   */
+  public QuadtreeSearch(final CaptureDiskTable table, final DiskIndex disks,
+      final ExecutorService workers) {
+    super();
+    this.table = table;
+    this.disks = disks;
+    this.workers = workers;
+    this.rangeSq = (double) Main.config.maxRangeMeters
+        * Main.config.maxRangeMeters;
+  }
+
+  /**
+   * Squared distance from a point to the nearest point of a box.
+   */
+  private static double nearSq(final double x, final double y,
+      final double minX, final double minY, final double maxX,
+      final double maxY) {
+    final double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+    final double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Squared distance from a point to the farthest corner of a box.
+   */
+  private static double farSq(final double x, final double y,
+      final double minX, final double minY, final double maxX,
+      final double maxY) {
+    final double dx = Math.max(x - minX, maxX - x);
+    final double dy = Math.max(y - minY, maxY - y);
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Sorts the partial disks of a parent cell into those covering all of a
+   * child, those covering part of it, and those missing it.
+   */
+  Cell split(final Cell parent, final double minX, final double minY,
+      final double width, final double height) {
+    final CaptureDiskTable t = this.table;
+    final double maxX = minX + width;
+    final double maxY = minY + height;
+    final double nearRangeSq = this.rangeSq * (1 + MARGIN);
+    final double farRangeSq = this.rangeSq * (1 - MARGIN);
+    int contained = parent.contained;
+    final int[] partial = new int[parent.partial.length];
+    int numPartial = 0;
+    for (final int d : parent.partial) {
+      if (maxX < t.minX[d] || minX > t.maxX[d] || maxY < t.minY[d]
+          || minY > t.maxY[d]) {
+        continue;
+      }
+      final double radiusSq = t.radiusSq[d];
+      if (QuadtreeSearch.nearSq(t.centerX[d], t.centerY[d], minX, minY, maxX,
+          maxY) > radiusSq * (1 + MARGIN)) {
+        continue;
+      }
+      final int t1 = t.t1[d];
+      final int t2 = t.t2[d];
+      if (QuadtreeSearch.nearSq(t.txX[t1], t.txY[t1], minX, minY, maxX, maxY) > nearRangeSq
+          && QuadtreeSearch.nearSq(t.txX[t2], t.txY[t2], minX, minY, maxX,
+              maxY) > nearRangeSq) {
+        continue;
+      }
+      if (minX > t.minX[d] && maxX < t.maxX[d] && minY > t.minY[d]
+          && maxY < t.maxY[d]
+          && QuadtreeSearch.farSq(t.centerX[d], t.centerY[d], minX, minY,
+              maxX, maxY) < radiusSq * (1 - MARGIN)
+          && (QuadtreeSearch.farSq(t.txX[t1], t.txY[t1], minX, minY, maxX,
+              maxY) < farRangeSq || QuadtreeSearch.farSq(t.txX[t2], t.txY[t2],
+              minX, minY, maxX, maxY) < farRangeSq)) {
+        ++contained;
+      } else {
+        partial[numPartial++] = d;
+      }
+    }
+    final int[] trimmed = new int[numPartial];
+    System.arraycopy(partial, 0, trimmed, 0, numPartial);
+    return new Cell(minX, minY, width, height, contained, trimmed);
+  }
+
+  /**
+   * Scores the center of a cell exactly.
+   *
+   * @param center
+   *          receives the bits of the center's float coordinates.
+   * @return the number of disks covering the center.
+   */
+  int scoreCenter(final Cell cell, final int[] center) {
+    final float x = (float) (cell.minX + cell.width / 2);
+    final float y = (float) (cell.minY + cell.height / 2);
+    center[0] = Float.floatToIntBits(x);
+    center[1] = Float.floatToIntBits(y);
+    int score = cell.contained;
+    for (final int d : cell.partial) {
+      if (Geometry.covers(this.table, d, x, y, this.rangeSq)) {
+        ++score;
+      }
+    }
+    return score;
+  }
+
+  @Override
+  public Receiver next() {
+    final long start = System.currentTimeMillis();
+    final int[] all = new int[this.table.size()];
+    int n = 0;
+    for (int d = 0; d < this.table.capacity(); ++d) {
+      if (this.table.isLive(d)) {
+        all[n++] = d;
+      }
+    }
+    final Cell root = this.split(new Cell(0, 0, 0, 0, 0, all), 0, 0,
+        Main.config.universeWidth, Main.config.universeHeight);
+    final int[] center = new int[2];
+    int maxScore = this.scoreCenter(root, center);
+    float maxX = Float.intBitsToFloat(center[0]);
+    float maxY = Float.intBitsToFloat(center[1]);
+    int maxOpen = 0;
+    int numCells = 1;
+
+    List<Cell> level = new ArrayList<Cell>();
+    if (root.partial.length > 0) {
+      level.add(root);
+    }
+    final int numTasks = Math.max(1, Main.config.numThreads
+        * TASKS_PER_THREAD);
+    while (!level.isEmpty()) {
+      final List<LevelTask> tasks = new ArrayList<LevelTask>(numTasks);
+      for (int i = 0; i < numTasks; ++i) {
+        final int from = (int) ((long) i * level.size() / numTasks);
+        final int to = (int) ((long) (i + 1) * level.size() / numTasks);
+        if (from < to) {
+          tasks.add(new LevelTask(level.subList(from, to), maxScore));
+        }
+      }
+      try {
+        for (final Future<Void> future : this.workers.invokeAll(tasks)) {
+          future.get();
+        }
+      } catch (final InterruptedException e) {
+        e.printStackTrace();
+        return null;
+      } catch (final ExecutionException e) {
+        e.printStackTrace();
+        return null;
+      }
+
+      // Tasks are in cell order, so the first of equal scores is kept
+      final List<Cell> nextLevel = new ArrayList<Cell>();
+      for (final LevelTask task : tasks) {
+        if (task.maxScore > maxScore) {
+          maxScore = task.maxScore;
+          maxX = task.maxX;
+          maxY = task.maxY;
+        }
+        maxOpen = Math.max(maxOpen, task.maxOpen);
+      }
+      for (final LevelTask task : tasks) {
+        for (final Cell child : task.children) {
+          if (child.upperBound() > maxScore) {
+            nextLevel.add(child);
+          }
+        }
+      }
+      numCells += nextLevel.size();
+      level = nextLevel;
+    }
+
+    log.info(String.format(
+        "Searched %,d cells in %,dms: best score %,d, bound %,d.",
+        Integer.valueOf(numCells),
+        Long.valueOf(System.currentTimeMillis() - start),
+        Integer.valueOf(maxScore), Integer.valueOf(Math.max(maxScore, maxOpen))));
+    if (maxScore == 0) {
+      return null;
+    }
+
+    final Receiver receiver = new Receiver();
+    receiver.setLocation(maxX, maxY);
+    receiver.coveringDisks = new ArrayList<CaptureDisk>(maxScore);
+    this.disks.collect(maxX, maxY, receiver.coveringDisks);
+    receiver.scoreBound = Math.max(receiver.coveringDisks.size(),
+        Math.max(maxScore, maxOpen));
+    return receiver;
+  }
+
+  /**
+   * Nothing to do: the tree is built again from the remaining disks.
+   */
+  @Override
+  public void removeAll(final Collection<CaptureDisk> covered) {
+    // Bounds are recomputed for every receiver
+  }
+}
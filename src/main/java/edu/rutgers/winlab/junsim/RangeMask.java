@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rasterized answer to "is any transmitter within range of this point?", with
+ * the same result as {@link Geometry#inRange}.
+ * <p>
+ * The area around the transmitters is split into square cells half the range
+ * wide, and each transmitter stamps its range into the cells: a cell is
+ * "inside" if every point in it is within range of one transmitter, and
+ * "outside" if no point in it is within range of any. Points in those cells
+ * are answered by a single lookup, so the lattice points of the grid
+ * experiments are mostly accepted or rejected in constant time. Only points in
+ * cells straddling the edge of the covered area are compared to the nearby
+ * transmitters, through a {@link TransmitterGrid}.
+ * </p>
+ * <p>
+ * The mask is immutable once built, so it is safe to query from multiple
+ * threads.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class RangeMask {
+
+  private static final Logger log = LoggerFactory.getLogger(RangeMask.class);
+
+  /**
+   * Upper bound on the number of cells in the mask.
+   */
+  private static final int MAX_CELLS = 1 << 22;
+
+  /**
+   * Relative margin for the "inside" and "outside" cells, so that rounding
+   * cannot put a point in the wrong one.
+   */
+  private static final double MARGIN = 1e-4;
+
+  /**
+   * Mask value for cells with no point in range.
+   */
+  private static final byte OUTSIDE = 0;
+
+  /**
+   * Mask value for cells with some points in range.
+   */
+  private static final byte EDGE = 1;
+
+  /**
+   * Mask value for cells with every point in range.
+   */
+  private static final byte INSIDE = 2;
+
+  /**
+   * Transmitters to check points in edge cells against.
+   */
+  private final TransmitterGrid grid;
+
+  /**
+   * In-range state of each cell.
+   */
+  private final byte[] mask;
+
+  /**
+   * The range, in meters.
+   */
+  private final double range;
+
+  /**
+   * Minimum x-coordinate covered by the mask.
+   */
+  private final double minX;
+
+  /**
+   * Minimum y-coordinate covered by the mask.
+   */
+  private final double minY;
+
+  /**
+   * Width and height of each cell.
+   */
+  private final double cellSize;
+
+  /**
+   * Number of columns in the mask.
+   */
+  private final int columns;
+
+  /**
+   * Number of rows in the mask.
+   */
+  private final int rows;
+
+  /**
+   * Creates a new mask over some transmitters.
+   *
+   * @param transmitters
+   *          the transmitters.
+   * @param range
+   *          the range, in meters.
+   */
+  public RangeMask(final Collection<Transmitter> transmitters,
+      final float range) {
+    super();
+    this.range = range;
+    this.grid = new TransmitterGrid(transmitters, range);
+
+    double lowX = Double.MAX_VALUE;
+    double lowY = Double.MAX_VALUE;
+    double highX = -Double.MAX_VALUE;
+    double highY = -Double.MAX_VALUE;
+    for (final Transmitter t : transmitters) {
+      lowX = Math.min(lowX, t.x);
+      lowY = Math.min(lowY, t.y);
+      highX = Math.max(highX, t.x);
+      highY = Math.max(highY, t.y);
+    }
+    if (transmitters.isEmpty()) {
+      lowX = lowY = highX = highY = 0;
+    }
+    // Small enough cells that the cell holding a transmitter is inside
+    double size = Math.max(range / 2.0, Float.MIN_VALUE);
+    while (((highX - lowX) / size + 6) * ((highY - lowY) / size + 6) > MAX_CELLS) {
+      size *= 2;
+    }
+    // Anything beyond the range of the outermost transmitters (plus a cell, to
+    // absorb rounding) is outside
+    this.minX = lowX - range - size;
+    this.minY = lowY - range - size;
+    final double width = highX - lowX + 2.0 * (range + size);
+    final double height = highY - lowY + 2.0 * (range + size);
+    this.cellSize = size;
+    this.columns = (int) (width / size) + 1;
+    this.rows = (int) (height / size) + 1;
+    final int reach = (int) Math.ceil(range / size) + 1;
+
+    this.mask = new byte[this.columns * this.rows];
+    final double insideSq = (double) range * range * (1 - MARGIN);
+    final double outsideSq = (double) range * range * (1 + MARGIN);
+    int numEdge = 0;
+    for (final Transmitter t : transmitters) {
+      final int col = (int) Math.floor((t.x - this.minX) / size);
+      final int row = (int) Math.floor((t.y - this.minY) / size);
+      final int highRow = Math.min(this.rows - 1, row + reach);
+      final int highCol = Math.min(this.columns - 1, col + reach);
+      for (int r = Math.max(0, row - reach); r <= highRow; ++r) {
+        final double top = this.minY + r * size;
+        final double dyNear = Math.max(0, Math.max(top - t.y, t.y - top - size));
+        final double dyFar = Math.max(Math.abs(top - t.y),
+            Math.abs(top + size - t.y));
+        for (int c = Math.max(0, col - reach); c <= highCol; ++c) {
+          final int cell = r * this.columns + c;
+          if (this.mask[cell] == INSIDE) {
+            continue;
+          }
+          final double left = this.minX + c * size;
+          final double dxNear = Math.max(0,
+              Math.max(left - t.x, t.x - left - size));
+          final double dxFar = Math.max(Math.abs(left - t.x),
+              Math.abs(left + size - t.x));
+          if (dxFar * dxFar + dyFar * dyFar < insideSq) {
+            if (this.mask[cell] == EDGE) {
+              --numEdge;
+            }
+            this.mask[cell] = INSIDE;
+          } else if (this.mask[cell] == OUTSIDE
+              && dxNear * dxNear + dyNear * dyNear <= outsideSq) {
+            this.mask[cell] = EDGE;
+            ++numEdge;
+          }
+        }
+      }
+    }
+
+    log.debug(String.format(
+        "Rasterized the range of %,d transmitters into %,d x %,d cells of %.2f (%,d edge cells).",
+        Integer.valueOf(transmitters.size()), Integer.valueOf(this.columns),
+        Integer.valueOf(this.rows), Double.valueOf(size),
+        Integer.valueOf(numEdge)));
+  }
+
+  /**
+   * Determines whether any transmitter is within range of a point.
+   *
+   * @param x
+   *          x-coordinate of the point.
+   * @param y
+   *          y-coordinate of the point.
+   * @return {@code true} if any transmitter is within range.
+   */
+  public boolean contains(final double x, final double y) {
+    final double col = Math.floor((x - this.minX) / this.cellSize);
+    final double row = Math.floor((y - this.minY) / this.cellSize);
+    if (col < 0 || row < 0 || col >= this.columns || row >= this.rows) {
+      return false;
+    }
+    final byte state = this.mask[(int) row * this.columns + (int) col];
+    if (state != EDGE) {
+      return state == INSIDE;
+    }
+    return this.grid.anyWithin(x, y, this.range);
+  }
+}
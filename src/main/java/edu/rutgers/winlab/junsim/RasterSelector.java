@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receiver selection for the "grid" experiment that keeps the lattice of
+ * solution points implicit, as an accumulation buffer of their depths.
+ * <p>
+ * Each capture disk is stamped into the buffer column by column: the lattice
+ * points of a column that the disk covers form at most two runs (the disk
+ * within range of either transmitter), found from the circle equations and
+ * then checked at their ends against {@link Geometry#covers}, so the depths
+ * are exactly the scores of the lattice points. Covered disks are stamped
+ * again with a decrement, and the next receiver is the deepest point, found by
+ * scanning the buffer.
+ * </p>
+ * <p>
+ * The buffer is split into bands of columns that are stamped and scanned in
+ * parallel. If the whole lattice would not fit in memory, only one band per
+ * task is kept at a time and every band is stamped again from the remaining
+ * disks for each receiver.
+ * </p>
+ * <p>
+ * Points are scanned in the same order the grid experiment generates them (by
+ * column, then by row), and equal depths go to the first point, so the
+ * receivers match the "lazy" selection over the generated points.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class RasterSelector implements ReceiverSelector {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(RasterSelector.class);
+
+  /**
+   * Largest number of lattice points to keep depths for between receivers.
+   */
+  private static final long MAX_STORED_POINTS = 1L << 24;
+
+  /**
+   * Number of lattice points in a band when the depths are not kept.
+   */
+  private static final int TILE_POINTS = 1 << 20;
+
+  /**
+   * Distance the circles are widened by before the ends of each run are
+   * checked exactly.
+   */
+  private static final double SLACK = 1e-4;
+
+  /**
+   * X-coordinates of the lattice columns.
+   */
+  final float[] xs;
+
+  /**
+   * Y-coordinates of the lattice rows.
+   */
+  final float[] ys;
+
+  /**
+   * The capture disks.
+   */
+  private final CaptureDiskTable table;
+
+  /**
+   * Index over the remaining capture disks.
+   */
+  private final DiskIndex disks;
+
+  /**
+   * Which lattice points are solution points.
+   */
+  private final RangeMask inRange;
+
+  /**
+   * Worker threadpool to stamp and scan the bands on.
+   */
+  private final ExecutorService workers;
+
+  /**
+   * First column of each band, and the number of columns at the end.
+   */
+  private final int[] bandStart;
+
+  /**
+   * Depth of each point of each band, by column then row, or {@code null} if
+   * the bands are stamped again for each receiver.
+   */
+  private final int[][] depths;
+
+  /**
+   * Creates a new selector over the lattice of the "grid" experiment and
+   * stamps the disks into it.
+   *
+   * @param table
+   *          the capture disks.
+   * @param disks
+   *          index over the remaining capture disks.
+   * @param transmitters
+   *          the transmitters.
+   * @param workers
+   *          worker threadpool to utilize.
+   */
+  public RasterSelector(final CaptureDiskTable table, final DiskIndex disks,
+      final Collection<Transmitter> transmitters, final ExecutorService workers) {
+    super();
+    this.table = table;
+    this.disks = disks;
+    this.workers = workers;
+    this.inRange = new RangeMask(transmitters, Main.config.maxRangeMeters);
+    // Same points, in the same order, as BinnedGridExperiment
+    final float step = 1f / Main.config.getGridDensity();
+    this.xs = RasterSelector.lattice(Main.config.universeWidth, step);
+    this.ys = RasterSelector.lattice(Main.config.universeHeight, step);
+
+    final long numPoints = (long) this.xs.length * this.ys.length;
+    final boolean stored = numPoints <= MAX_STORED_POINTS;
+    int numBands = Math.max(1, Main.config.numThreads * 4);
+    if (!stored) {
+      numBands = (int) Math.max(numBands, (numPoints + TILE_POINTS - 1)
+          / TILE_POINTS);
+    }
+    numBands = Math.min(numBands, Math.max(1, this.xs.length));
+    this.bandStart = new int[numBands + 1];
+    for (int b = 0; b <= numBands; ++b) {
+      this.bandStart[b] = (int) ((long) b * this.xs.length / numBands);
+    }
+    log.info(String.format(
+        "Rasterizing %,d x %,d lattice points in %,d bands (%s).",
+        Integer.valueOf(this.xs.length), Integer.valueOf(this.ys.length),
+        Integer.valueOf(numBands), stored ? "stored" : "restamped"));
+
+    if (stored) {
+      this.depths = new int[numBands][];
+      final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (int b = 0; b < numBands; ++b) {
+        final int band = b;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            RasterSelector.this.depths[band] = RasterSelector.this
+                .stampRemaining(band);
+            return null;
+          }
+        });
+      }
+      this.invokeAll(tasks);
+    } else {
+      this.depths = null;
+    }
+  }
+
+  /**
+   * The coordinates of one axis of the lattice, accumulated the same way as
+   * the grid experiment generates them.
+   */
+  private static float[] lattice(final float length, final float step) {
+    int count = 0;
+    for (float v = 0; v <= length; v += step) {
+      ++count;
+    }
+    final float[] values = new float[count];
+    int i = 0;
+    for (float v = 0; v <= length && i < count; v += step) {
+      values[i++] = v;
+    }
+    return values;
+  }
+
+  /**
+   * Index of the first value that is at least {@code v}.
+   */
+  private static int lowerBound(final float[] values, final double v) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] < v) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Index of the first value that is greater than {@code v}.
+   */
+  private static int upperBound(final float[] values, final double v) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] <= v) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int bandWidth(final int band) {
+    return this.bandStart[band + 1] - this.bandStart[band];
+  }
+
+  /**
+   * Stamps every remaining disk into a new buffer for a band.
+   */
+  int[] stampRemaining(final int band) {
+    final int[] depth = new int[this.bandWidth(band) * this.ys.length];
+    final int[] runs = new int[4];
+    for (int d = 0; d < this.table.capacity(); ++d) {
+      if (this.table.isLive(d)) {
+        this.stamp(depth, band, d, 1, runs);
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Adds {@code delta} to the depth of every point of a band that a disk
+   * covers.
+   */
+  private void stamp(final int[] depth, final int band, final int disk,
+      final int delta, final int[] runs) {
+    final int first = Math.max(this.bandStart[band],
+        RasterSelector.lowerBound(this.xs, this.table.minX[disk] - SLACK));
+    final int last = Math.min(this.bandStart[band + 1],
+        RasterSelector.upperBound(this.xs, this.table.maxX[disk] + SLACK));
+    final int rows = this.ys.length;
+    for (int col = first; col < last; ++col) {
+      final int numRuns = this.findRuns(disk, this.xs[col], runs);
+      final int offset = (col - this.bandStart[band]) * rows;
+      for (int r = 0; r < numRuns; ++r) {
+        for (int row = runs[2 * r]; row <= runs[2 * r + 1]; ++row) {
+          depth[offset + row] += delta;
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the runs of rows in a column that a disk covers.
+   *
+   * @return the number of runs (0 to 2) written to {@code runs} as inclusive
+   *         {@code first, last} row pairs.
+   */
+  private int findRuns(final int disk, final float x, final int[] runs) {
+    final CaptureDiskTable t = this.table;
+    final double range = Main.config.maxRangeMeters;
+    final double rangeSq = range * range;
+    // The disk's own extent in this column
+    final double dx = x - t.centerX[disk];
+    final double r = Geometry.coverRadius(t.radius[disk]) + SLACK;
+    if (dx * dx > r * r) {
+      return 0;
+    }
+    final double half = Math.sqrt(r * r - dx * dx);
+    final double low = Math.max(t.centerY[disk] - half, t.minY[disk] - SLACK);
+    final double high = Math.min(t.centerY[disk] + half, t.maxY[disk] + SLACK);
+
+    // Within range of either transmitter
+    int numRuns = 0;
+    final int[] txs = { t.t1[disk], t.t2[disk] };
+    for (final int tx : txs) {
+      final double tdx = x - t.txX[tx];
+      final double reach = range + SLACK;
+      if (tdx * tdx > reach * reach) {
+        continue;
+      }
+      final double thalf = Math.sqrt(reach * reach - tdx * tdx);
+      int from = RasterSelector.lowerBound(this.ys,
+          Math.max(low, t.txY[tx] - thalf));
+      int to = RasterSelector.upperBound(this.ys,
+          Math.min(high, t.txY[tx] + thalf)) - 1;
+      // Only the ends of the run can be off
+      while (from <= to
+          && !Geometry.covers(t, disk, x, this.ys[from], rangeSq)) {
+        ++from;
+      }
+      while (to >= from && !Geometry.covers(t, disk, x, this.ys[to], rangeSq)) {
+        --to;
+      }
+      if (from > to) {
+        continue;
+      }
+      if (numRuns == 1 && from <= runs[1] + 1 && to >= runs[0] - 1) {
+        // Overlaps the first run
+        runs[0] = Math.min(runs[0], from);
+        runs[1] = Math.max(runs[1], to);
+      } else {
+        runs[2 * numRuns] = from;
+        runs[2 * numRuns + 1] = to;
+        ++numRuns;
+      }
+    }
+    return numRuns;
+  }
+
+  /**
+   * Finds the deepest solution point of a band.
+   *
+   * @return the depth, column and row of the point, or a depth of 0 if no
+   *         point covers any disk.
+   */
+  int[] deepest(final int band, final int[] depth) {
+    final int rows = this.ys.length;
+    final int[] best = { 0, -1, -1 };
+    for (int col = this.bandStart[band]; col < this.bandStart[band + 1]; ++col) {
+      final int offset = (col - this.bandStart[band]) * rows;
+      for (int row = 0; row < rows; ++row) {
+        final int value = depth[offset + row];
+        if (value > best[0]
+            && this.inRange.contains(this.xs[col], this.ys[row])) {
+          best[0] = value;
+          best[1] = col;
+          best[2] = row;
+        }
+      }
+    }
+    return best;
+  }
+
+  private <T> List<T> invokeAll(final List<Callable<T>> tasks) {
+    final List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (final Future<T> future : this.workers.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (final InterruptedException e) {
+      e.printStackTrace();
+    } catch (final ExecutionException e) {
+      e.printStackTrace();
+    }
+    return results;
+  }
+
+  @Override
+  public Receiver next() {
+    final long start = System.currentTimeMillis();
+    final int numBands = this.bandStart.length - 1;
+    final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+    for (int b = 0; b < numBands; ++b) {
+      final int band = b;
+      tasks.add(new Callable<int[]>() {
+        @Override
+        public int[] call() {
+          final int[] depth = RasterSelector.this.depths != null
+              ? RasterSelector.this.depths[band]
+              : RasterSelector.this.stampRemaining(band);
+          return RasterSelector.this.deepest(band, depth);
+        }
+      });
+    }
+    // Bands are in column order, so the first of equal depths is the earliest
+    int[] best = null;
+    for (final int[] found : this.invokeAll(tasks)) {
+      if (found[0] > 0 && (best == null || found[0] > best[0])) {
+        best = found;
+      }
+    }
+    log.info(String.format("Scanned the raster in %,dms.",
+        Long.valueOf(System.currentTimeMillis() - start)));
+    if (best == null) {
+      return null;
+    }
+
+    final Receiver receiver = new Receiver();
+    receiver.setLocation(this.xs[best[1]], this.ys[best[2]]);
+    receiver.coveringDisks = new ArrayList<CaptureDisk>(best[0]);
+    this.disks.collect(receiver.getX(), receiver.getY(),
+        receiver.coveringDisks);
+    return receiver;
+  }
+
+  /**
+   * Stamps the covered disks out of the stored depths.
+   */
+  @Override
+  public void removeAll(final Collection<CaptureDisk> covered) {
+    if (this.depths == null) {
+      // Bands are stamped from the remaining disks every time
+      return;
+    }
+    final int[] removed = new int[covered.size()];
+    int n = 0;
+    for (final CaptureDisk d : covered) {
+      removed[n++] = d.index;
+    }
+    final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int b = 0; b < this.depths.length; ++b) {
+      final int band = b;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          final int[] runs = new int[4];
+          for (final int disk : removed) {
+            RasterSelector.this.stamp(RasterSelector.this.depths[band], band,
+                disk, -1, runs);
+          }
+          return null;
+        }
+      });
+    }
+    this.invokeAll(tasks);
+  }
+}
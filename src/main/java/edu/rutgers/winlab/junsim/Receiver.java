@@ -57,6 +57,12 @@ public class Receiver extends Point2D.Float implements Drawable {
   Collection<CaptureDisk> coveringDisks = new LinkedList<CaptureDisk>();
   
   public float score = 0;
+
+  /**
+   * Upper bound on the number of disks covering any position, if the search
+   * that placed this receiver certifies one. 0 if it does not.
+   */
+  int scoreBound = 0;
   
   static final BufferedImage hatchImage = new BufferedImage(5, 5, BufferedImage.TYPE_INT_ARGB);
   static final Rectangle2D hatchAnchor = new Rectangle2D.Double(0, 0, 5, 5);
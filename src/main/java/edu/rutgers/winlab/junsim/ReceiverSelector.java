@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Collection;
+
+/**
+ * Chooses receivers, one at a time, from a fixed set of solution points.
+ *
+ * @author Robert Moore
+ */
+public interface ReceiverSelector {
+
+  /**
+   * Selects the best point for the next receiver. The disks it covers are
+   * returned in the receiver but are not removed.
+   *
+   * @return the next receiver, or {@code null} if no point covers any disk.
+   */
+  public Receiver next();
+
+  /**
+   * Notifies the selector that capture disks were removed (covered) after
+   * placing a receiver.
+   *
+   * @param covered
+   *          the removed disks.
+   */
+  public void removeAll(Collection<CaptureDisk> covered);
+
+}
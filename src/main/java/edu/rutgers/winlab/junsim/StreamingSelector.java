@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Greedy receiver selection that never stores the solution points.
+ * <p>
+ * For each receiver, the solution points of the "basic" experiment (disk
+ * centers, then disk intersections) are generated again in the calling thread
+ * and handed, in bounded batches, to scoring tasks on the worker pool through a
+ * bounded queue. Generation and scoring overlap, and only the best point of
+ * each task is kept, so memory no longer grows with the number of points.
+ * </p>
+ * <p>
+ * Points are numbered in the order they are generated, and equal scores go to
+ * the lowest number. This is the order the points are stored in by the
+ * "greedy" selection, so both choose the same receivers (unless
+ * {@code candidateEpsilon} merges points there). Duplicate points are not
+ * removed, only scored again.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class StreamingSelector implements ReceiverSelector {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(StreamingSelector.class);
+
+  /**
+   * Number of points in each batch.
+   */
+  private static final int BATCH_SIZE = 4096;
+
+  /**
+   * Number of batches per scoring task that may wait in the queue.
+   */
+  private static final int BATCHES_PER_TASK = 2;
+
+  /**
+   * How long to wait for room in the queue before checking the scoring tasks
+   * again, in milliseconds.
+   */
+  private static final long POLL_MILLIS = 100;
+
+  /**
+   * Marks the end of the points.
+   */
+  private static final Batch END = new Batch(new float[0], 0, -1);
+
+  /**
+   * A batch of points and the number of the first one.
+   */
+  private static final class Batch {
+    final float[] points;
+
+    final int count;
+
+    final long first;
+
+    Batch(final float[] points, final int count, final long first) {
+      this.points = points;
+      this.count = count;
+      this.first = first;
+    }
+  }
+
+  /**
+   * Scores batches from the queue until it reaches the end.
+   */
+  private final class ScoringTask implements Callable<Void> {
+    final BlockingQueue<Batch> queue;
+
+    int maxScore = 0;
+
+    long maxNumber = -1;
+
+    float maxX;
+
+    float maxY;
+
+    ScoringTask(final BlockingQueue<Batch> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public Void call() throws InterruptedException {
+      while (true) {
+        final Batch batch = this.queue.take();
+        if (batch == END) {
+          return null;
+        }
+        for (int i = 0; i < batch.count; ++i) {
+          final float x = batch.points[2 * i];
+          final float y = batch.points[2 * i + 1];
+          // Points tied with the best are still counted, so the earliest wins
+          final int score = StreamingSelector.this.disks.countAtLeast(x, y,
+              Math.max(1, StreamingSelector.this.best.get()));
+          if (score < 0) {
+            continue;
+          }
+          final long number = batch.first + i;
+          if (score > this.maxScore
+              || (score == this.maxScore && number < this.maxNumber)) {
+            this.maxScore = score;
+            this.maxNumber = number;
+            this.maxX = x;
+            this.maxY = y;
+            StreamingSelector.this.raiseBest(score);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The remaining capture disks, used for scoring.
+   */
+  private final DiskIndex disks;
+
+  /**
+   * The table indexed by {@code disks}.
+   */
+  private final CaptureDiskTable table;
+
+  /**
+   * The disks the points are generated from, unless
+   * {@code stripSolutionPoints} is set.
+   */
+  private final CaptureDisk[] allDisks;
+
+  /**
+   * Which points are within range of a transmitter.
+   */
+  private final RangeMask inRange;
+
+  /**
+   * Worker threadpool to score the points on.
+   */
+  private final ExecutorService workers;
+
+  /**
+   * Best score found by any task in the current pass.
+   */
+  final AtomicInteger best = new AtomicInteger(0);
+
+  /**
+   * Creates a new selector.
+   *
+   * @param table
+   *          the capture disks.
+   * @param disks
+   *          index over the remaining capture disks.
+   * @param transmitters
+   *          the transmitters.
+   * @param workers
+   *          worker threadpool to utilize.
+   */
+  public StreamingSelector(final CaptureDiskTable table,
+      final DiskIndex disks, final Collection<Transmitter> transmitters,
+      final ExecutorService workers) {
+    super();
+    this.table = table;
+    this.disks = disks;
+    this.allDisks = table.toArray(new CaptureDisk[table.size()]);
+    this.inRange = new RangeMask(transmitters, Main.config.maxRangeMeters);
+    this.workers = workers;
+  }
+
+  void raiseBest(final int score) {
+    int current = this.best.get();
+    while (score > current && !this.best.compareAndSet(current, score)) {
+      current = this.best.get();
+    }
+  }
+
+  /**
+   * Hands a batch to the scoring tasks, waiting while the queue is full. A
+   * task only returns normally after taking an end marker, so one that is done
+   * before that has failed, and its failure is thrown instead of waiting on a
+   * queue that nothing may drain.
+   *
+   * @throws ExecutionException
+   *           if a scoring task has failed.
+   */
+  private static void put(final BlockingQueue<Batch> queue,
+      final Batch batch, final List<Future<Void>> futures)
+      throws InterruptedException, ExecutionException {
+    do {
+      for (final Future<Void> future : futures) {
+        if (future.isDone()) {
+          // Throws the failure, if any
+          future.get();
+        }
+      }
+    } while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS));
+  }
+
+  @Override
+  public Receiver next() {
+    // Points are regenerated from the remaining disks if that is what the
+    // stored solution points would do
+    final CaptureDisk[] source = Main.config.stripSolutionPoints ? this.table
+        .toArray(new CaptureDisk[this.table.size()]) : this.allDisks;
+    final int numTasks = Math.max(1, Main.config.numThreads);
+    final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(numTasks
+        * BATCHES_PER_TASK);
+    this.best.set(0);
+
+    final List<ScoringTask> tasks = new ArrayList<ScoringTask>(numTasks);
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>(numTasks);
+    for (int t = 0; t < numTasks; ++t) {
+      final ScoringTask task = new ScoringTask(queue);
+      tasks.add(task);
+      futures.add(this.workers.submit(task));
+    }
+
+    final long start = System.currentTimeMillis();
+    final long[] generated = new long[1];
+    try {
+      final DiskIntersections.PointSink sink = new DiskIntersections.PointSink() {
+        @Override
+        public void accept(final float[] points, final int count)
+            throws InterruptedException, ExecutionException {
+          StreamingSelector.put(queue, new Batch(Arrays.copyOf(points,
+              2 * count), count, generated[0]), futures);
+          generated[0] += count;
+        }
+      };
+
+      // Center points of the disks first, as in BasicExperiment
+      final float[] centers = new float[2 * BATCH_SIZE];
+      int numCenters = 0;
+      for (final CaptureDisk disk : source) {
+        if (disk.disk.getCenterX() < 0
+            || disk.disk.getCenterX() >= Main.config.universeWidth
+            || disk.disk.getCenterY() < 0
+            || disk.disk.getCenterY() > Main.config.universeHeight) {
+          continue;
+        }
+        if (this.inRange.contains(disk.disk.center.x, disk.disk.center.y)) {
+          centers[2 * numCenters] = disk.disk.center.x;
+          centers[2 * numCenters + 1] = disk.disk.center.y;
+          if (++numCenters == BATCH_SIZE) {
+            sink.accept(centers, numCenters);
+            numCenters = 0;
+          }
+        }
+      }
+      if (numCenters > 0) {
+        sink.accept(centers, numCenters);
+      }
+
+      DiskIntersections.stream(source, this.inRange, BATCH_SIZE, sink);
+      for (int t = 0; t < numTasks; ++t) {
+        StreamingSelector.put(queue, END, futures);
+      }
+      for (final Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (final InterruptedException e) {
+      e.printStackTrace();
+      StreamingSelector.cancel(futures);
+      return null;
+    } catch (final ExecutionException e) {
+      // The points of a failed task were never scored
+      log.error("A scoring task failed, no receiver selected.");
+      e.printStackTrace();
+      StreamingSelector.cancel(futures);
+      return null;
+    }
+
+    ScoringTask winner = null;
+    for (final ScoringTask task : tasks) {
+      if (task.maxScore == 0) {
+        continue;
+      }
+      if (winner == null || task.maxScore > winner.maxScore
+          || (task.maxScore == winner.maxScore
+              && task.maxNumber < winner.maxNumber)) {
+        winner = task;
+      }
+    }
+    log.info(String.format("Streamed %,d points in %,dms.",
+        Long.valueOf(generated[0]),
+        Long.valueOf(System.currentTimeMillis() - start)));
+
+    if (winner == null) {
+      return null;
+    }
+    final Receiver receiver = new Receiver();
+    receiver.setLocation(winner.maxX, winner.maxY);
+    receiver.coveringDisks = new ArrayList<CaptureDisk>(winner.maxScore);
+    this.disks.collect(winner.maxX, winner.maxY, receiver.coveringDisks);
+    return receiver;
+  }
+
+  /**
+   * Stops the scoring tasks that are still running.
+   */
+  private static void cancel(final List<Future<Void>> futures) {
+    for (final Future<Void> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Nothing to do: points are scored against the {@code DiskIndex}.
+   */
+  @Override
+  public void removeAll(final Collection<CaptureDisk> covered) {
+    // Scores are recomputed for every receiver
+  }
+}
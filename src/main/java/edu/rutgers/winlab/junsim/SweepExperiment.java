@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the same optimum as {@link BasicExperiment}, but without materializing
+ * the intersection points of every pair of capture disks.
+ * <p>
+ * For each disk, the arcs of its boundary that lie within the other disks are
+ * swept in angular order. The depth of the sweep at each intersection point is
+ * an upper bound on that point's score, so only the points whose bound can
+ * still beat the best score found so far are scored exactly. Disk centers are
+ * always scored, just like in the basic algorithm. Memory is proportional to
+ * the number of disks that overlap the disk being swept, rather than to the
+ * total number of intersection points.
+ * </p>
+ *
+ * @author Robert Moore
+ *
+ */
+public class SweepExperiment implements Experiment {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(SweepExperiment.class);
+
+  /**
+   * Amount (in radians) by which each arc is widened on either side, so that
+   * rounding errors can only over-estimate the depth at an intersection.
+   */
+  static final double ARC_SLACK = 1e-6;
+
+  private static final double TWO_PI = 2 * Math.PI;
+
+  /**
+   * Configuration for this task.
+   */
+  final TaskConfig config;
+  /**
+   * Statistics to update.
+   */
+  final ExperimentStats stats[];
+  /**
+   * Name of the directory in which to save images.
+   */
+  String saveDirectory = null;
+  /**
+   * Pool of worker threads to utilize.
+   */
+  private final ExecutorService workers;
+
+  /**
+   * Creates a new experiment task with the specific configuration, global stats
+   * to update, and worker pool.
+   *
+   * @param config
+   *          configuration to use.
+   * @param stats
+   *          statistics to update at the end
+   * @param workers
+   *          worker threadpool to utilize.
+   */
+  public SweepExperiment(final TaskConfig config,
+      final ExperimentStats[] stats, final ExecutorService workers) {
+    super();
+    this.workers = workers;
+    this.config = config;
+    this.stats = stats;
+    this.saveDirectory = Main.buildPath(String.format("s%d_t%d_x%d"
+        + (Main.config.stripSolutionPoints ? "_S" : ""),
+        Long.valueOf(Main.config.randomSeed),
+        Integer.valueOf(this.config.numTransmitters),
+        Integer.valueOf(this.config.trialNumber)));
+  }
+
+  /**
+   * The best point found by a sweep task. Ties are broken by the lowest key so
+   * that the result does not depend on how the tasks are scheduled.
+   */
+  private static final class Candidate {
+    float x;
+    float y;
+    int score = 0;
+    long key = Long.MAX_VALUE;
+    long evaluated = 0;
+
+    void offer(final float x, final float y, final int score, final long key) {
+      if (score > this.score || (score == this.score && score > 0 && key < this.key)) {
+        this.x = x;
+        this.y = y;
+        this.score = score;
+        this.key = key;
+      }
+    }
+  }
+
+  /**
+   * Sweeps a contiguous block of disks and returns the best point found on
+   * their boundaries or at their centers.
+   */
+  private static final class SweepTask implements Callable<Candidate> {
+
+    /**
+     * All of the disks.
+     */
+    final CaptureDiskTable table;
+    /**
+     * Index over the remaining disks, used for exact scoring.
+     */
+    final DiskIndex index;
+    /**
+     * Best score found by any task so far.
+     */
+    final AtomicInteger best;
+    /**
+     * Transmitter x-coordinates, for range checks.
+     */
+    final float[] txX;
+    /**
+     * Transmitter y-coordinates, for range checks.
+     */
+    final float[] txY;
+    /**
+     * First disk index to sweep (inclusive).
+     */
+    final int first;
+    /**
+     * Last disk index to sweep (exclusive).
+     */
+    final int last;
+    /**
+     * Whether removed disks still contribute candidate points, as the basic
+     * algorithm's solution points do unless they are stripped.
+     */
+    final boolean allDisks;
+
+    SweepTask(final CaptureDiskTable table, final DiskIndex index,
+        final AtomicInteger best, final float[] txX, final float[] txY,
+        final int first, final int last, final boolean allDisks) {
+      super();
+      this.table = table;
+      this.index = index;
+      this.best = best;
+      this.txX = txX;
+      this.txY = txY;
+      this.first = first;
+      this.last = last;
+      this.allDisks = allDisks;
+    }
+
+    @Override
+    public Candidate call() {
+      final Candidate found = new Candidate();
+      for (int i = this.first; i < this.last; ++i) {
+        if (this.allDisks || this.table.isLive(i)) {
+          this.sweep(i, found);
+        }
+      }
+      return found;
+    }
+
+    /**
+     * Scores the center of a disk, and every intersection point on its boundary
+     * whose sweep depth is at least the best score so far. Intersections with
+     * lower-indexed disks are left to those disks' sweeps.
+     */
+    private void sweep(final int i, final Candidate found) {
+      final CaptureDiskTable t = this.table;
+      final int capacity = t.capacity();
+      final float cx = t.centerX[i];
+      final float cy = t.centerY[i];
+      final double r = t.radius[i];
+
+      // The center of the disk
+      if (cx >= 0 && cx < Main.config.universeWidth && cy >= 0
+          && cy <= Main.config.universeHeight
+          && Geometry.inRange(cx, cy, this.txX, this.txY, this.txX.length,
+              Main.config.maxRangeMeters)) {
+        final int score = this.index.count(cx, cy);
+        ++found.evaluated;
+        found.offer(cx, cy, score, ((long) i * capacity + i) * 2);
+        this.raiseBest(score);
+      }
+
+      // Arcs of this boundary covered by other remaining disks
+      int depth = t.isLive(i) ? 1 : 0;
+      int numArcs = 0;
+      double[] entries = new double[16];
+      double[] exits = new double[16];
+      // Intersection points with higher-indexed disks
+      int numPairs = 0;
+      int[] pairs = new int[16];
+      double[] pairLow = new double[16];
+      double[] pairHigh = new double[16];
+
+      for (int j = 0; j < capacity; ++j) {
+        if (j == i) {
+          continue;
+        }
+        final boolean liveJ = t.isLive(j);
+        final boolean pairJ = j > i && (this.allDisks || liveJ);
+        if (!liveJ && !pairJ) {
+          continue;
+        }
+        final double dx = t.centerX[j] - cx;
+        final double dy = t.centerY[j] - cy;
+        final double dSq = dx * dx + dy * dy;
+        final double rj = t.radius[j];
+        final double sum = r + rj;
+        if (dSq > sum * sum) {
+          continue;
+        }
+        if (dSq == 0) {
+          if (liveJ && rj >= r) {
+            ++depth;
+          }
+          continue;
+        }
+        final double d = Math.sqrt(dSq);
+        final double cos = (r * r + dSq - rj * rj) / (2 * r * d);
+        final double alpha = Math.atan2(dy, dx);
+        final double theta = Math.acos(Math.max(-1, Math.min(1, cos)));
+
+        if (liveJ) {
+          if (cos <= -1) {
+            // The whole boundary is inside disk j
+            ++depth;
+          } else {
+            if (numArcs == entries.length) {
+              entries = Arrays.copyOf(entries, numArcs * 2);
+              exits = Arrays.copyOf(exits, numArcs * 2);
+            }
+            final double start = SweepExperiment.normalize(alpha - theta
+                - ARC_SLACK);
+            final double end = start + 2 * (theta + ARC_SLACK);
+            if (end >= TWO_PI) {
+              // Wraps past zero, so it is already open at the start of the
+              // sweep
+              ++depth;
+              exits[numArcs] = end - TWO_PI;
+            } else {
+              exits[numArcs] = end;
+            }
+            entries[numArcs] = start;
+            ++numArcs;
+          }
+        }
+
+        if (pairJ) {
+          if (numPairs == pairs.length) {
+            pairs = Arrays.copyOf(pairs, numPairs * 2);
+            pairLow = Arrays.copyOf(pairLow, numPairs * 2);
+            pairHigh = Arrays.copyOf(pairHigh, numPairs * 2);
+          }
+          pairs[numPairs] = j;
+          pairLow[numPairs] = SweepExperiment.normalize(alpha - theta);
+          pairHigh[numPairs] = SweepExperiment.normalize(alpha + theta);
+          ++numPairs;
+        }
+      }
+
+      Arrays.sort(entries, 0, numArcs);
+      Arrays.sort(exits, 0, numArcs);
+
+      final float[] points = new float[4];
+      for (int p = 0; p < numPairs; ++p) {
+        final int bound = depth
+            + Math.max(
+                SweepExperiment.depthAt(entries, exits, numArcs, pairLow[p]),
+                SweepExperiment.depthAt(entries, exits, numArcs, pairHigh[p]));
+        if (bound < this.best.get()) {
+          continue;
+        }
+        final int j = pairs[p];
+        final int numPoints = Main.generateIntersections(t.disks[i],
+            t.disks[j], points);
+        for (int k = 0; k < numPoints; ++k) {
+          final float x = points[2 * k];
+          final float y = points[2 * k + 1];
+          if (!Geometry.inRange(x, y, this.txX, this.txY, this.txX.length,
+              Main.config.maxRangeMeters)) {
+            continue;
+          }
+          final int score = this.index.count(x, y);
+          ++found.evaluated;
+          found.offer(x, y, score, ((long) i * capacity + j) * 2 + k);
+          this.raiseBest(score);
+        }
+      }
+    }
+
+    private void raiseBest(final int score) {
+      int current = this.best.get();
+      while (score > current && !this.best.compareAndSet(current, score)) {
+        current = this.best.get();
+      }
+    }
+  }
+
+  /**
+   * Maps an angle into {@code [0, 2*PI)}.
+   */
+  static double normalize(final double angle) {
+    double a = angle % TWO_PI;
+    if (a < 0) {
+      a += TWO_PI;
+    }
+    return a >= TWO_PI ? 0 : a;
+  }
+
+  /**
+   * Number of arcs (beyond those open at angle 0) covering an angle: the arcs
+   * that have started at or before it minus those that ended before it. Both
+   * arrays must be sorted.
+   */
+  static int depthAt(final double[] entries, final double[] exits,
+      final int numArcs, final double angle) {
+    return SweepExperiment.countAtMost(entries, numArcs, angle)
+        - SweepExperiment.countBelow(exits, numArcs, angle);
+  }
+
+  private static int countAtMost(final double[] sorted, final int length,
+      final double value) {
+    int low = 0;
+    int high = length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] <= value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static int countBelow(final double[] sorted, final int length,
+      final double value) {
+    int low = 0;
+    int high = length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  public Boolean perform() {
+    final FileRenderer display = new FileRenderer(Main.gfxConfig);
+
+    // Compute all possible capture disks
+    final CaptureDiskTable disks = new CaptureDiskTable(Main
+        .generateCaptureDisks(this.config.transmitters, this.workers));
+    final DiskIndex index = new DiskIndex(disks);
+    if (Main.gfxConfig.generateImages) {
+      display.setTransmitters(this.config.transmitters);
+      display.setCaptureDisks(disks);
+
+      final String saveName = this.saveDirectory + File.separator + "1000";
+      Main.saveImage(display, saveName);
+      display.clear();
+    }
+    log.info("[" + this.config.trialNumber + "] Generated " + disks.size()
+        + " disks.");
+
+    final float[] txX = Geometry.getXs(this.config.transmitters);
+    final float[] txY = Geometry.getYs(this.config.transmitters);
+    final int totalCaptureDisks = disks.size();
+    int m = 0;
+
+    // Keep track of which collisions are captured so that packet loss
+    // probabilities can be quickly calculated
+    final CaptureMatrix capturedCollisions = new CaptureMatrix(
+        this.config.transmitters);
+
+    while (m < this.config.numReceivers && !disks.isEmpty()) {
+      log.info("[" + this.config.trialNumber
+          + "] Calculating position for receiver " + (m + 1) + ".");
+
+      final AtomicInteger best = new AtomicInteger(1);
+      final int capacity = disks.capacity();
+      final int numTasks = Math.max(1, Math.min(capacity,
+          Main.config.numThreads * 4));
+      final Collection<SweepTask> tasks = new ArrayList<SweepTask>();
+      for (int i = 0; i < numTasks; ++i) {
+        tasks.add(new SweepTask(disks, index, best, txX, txY, (int) ((long) i
+            * capacity / numTasks), (int) ((long) (i + 1) * capacity / numTasks),
+            !Main.config.stripSolutionPoints));
+      }
+
+      final long start = System.currentTimeMillis();
+      Candidate bestFound = null;
+      long evaluated = 0;
+      try {
+        final List<Future<Candidate>> solutions = this.workers.invokeAll(tasks);
+
+        for (final Future<Candidate> future : solutions) {
+          if (future.isCancelled() || !future.isDone()) {
+            log.error("One of the tasks was cancelled! Double-check the code!");
+            return Boolean.FALSE;
+          }
+          try {
+            final Candidate c = future.get();
+            evaluated += c.evaluated;
+            if (c.score == 0) {
+              continue;
+            }
+            if (bestFound == null || c.score > bestFound.score
+                || (c.score == bestFound.score && c.key < bestFound.key)) {
+              bestFound = c;
+            }
+          } catch (final ExecutionException e) {
+            e.printStackTrace();
+          }
+        }
+
+      } catch (final InterruptedException e) {
+        e.printStackTrace();
+      }
+      final long duration = System.currentTimeMillis() - start;
+      log.info(String.format("Swept %,d disks, scoring %,d points in %,dms.\n",
+          Integer.valueOf(capacity), Long.valueOf(evaluated),
+          Long.valueOf(duration)));
+
+      // No solutions found?
+      if (bestFound == null) {
+        break;
+      }
+
+      final Receiver maxReceiver = new Receiver();
+      maxReceiver.setLocation(bestFound.x, bestFound.y);
+      maxReceiver.coveringDisks = new ArrayList<CaptureDisk>();
+      index.collect(bestFound.x, bestFound.y, maxReceiver.coveringDisks);
+
+      // Add the newest receiver and remove newly covered disks
+      this.config.receivers.add(maxReceiver);
+      // Mark the captured collisions for the contention calculations
+      capturedCollisions.captureAll(maxReceiver.coveringDisks);
+      index.removeAll(maxReceiver.coveringDisks);
+
+      // Store the min, max, and mean contention, kept up to date as the
+      // collisions are captured
+      this.stats[m].addContention(capturedCollisions.getMeanContention());
+      this.stats[m].addMinContention(capturedCollisions.getMinContention());
+      this.stats[m].addMaxContention(capturedCollisions.getMaxContention());
+
+      final float capturedDisks = totalCaptureDisks - disks.size();
+      final float captureRatio = (capturedDisks / totalCaptureDisks);
+      // Debugging stuff
+      if (Main.gfxConfig.generateImages) {
+        display.setTransmitters(this.config.transmitters);
+        display.setCaptureDisks(disks);
+        display.setReceiverPoints(this.config.receivers);
+
+        final String saveName = String.format(this.saveDirectory
+            + File.separator + "1%03d", (m + 1));
+        Main.saveImage(display, saveName);
+        display.clear();
+      }
+
+      this.stats[m].addCoverage(captureRatio);
+      ++m;
+    } // End for each receiver
+
+    disks.clear();
+    this.config.transmitters.clear();
+    Runtime.getRuntime().gc();
+    return Boolean.TRUE;
+  }
+}
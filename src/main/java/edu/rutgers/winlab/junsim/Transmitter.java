@@ -27,21 +27,34 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 
 /**
  * @author Robert Moore
  */
 public class Transmitter extends Point2D.Float implements Drawable {
 
-  private final Collection<CaptureDisk> disks = new HashSet<CaptureDisk>();
+  private final Collection<CaptureDisk> disks = new ArrayList<CaptureDisk>();
 
-  private final Collection<CaptureDisk> coveredDisks = new HashSet<CaptureDisk>();
+  /**
+   * Number of capture disks of this transmitter, including any that were only
+   * counted and never stored.
+   */
+  private int numDisks = 0;
+
+  /**
+   * Number of this transmitter's disks that are covered by a receiver.
+   */
+  private int numCoveredDisks = 0;
+
+  /**
+   * Position of this transmitter within its {@link CaptureMatrix}.
+   */
+  int id = -1;
 
   public int getContention(){
-    return this.disks.size() - this.coveredDisks.size();
+    return this.numDisks - this.numCoveredDisks;
   }
 
   @Override
@@ -83,21 +96,48 @@ public class Transmitter extends Point2D.Float implements Drawable {
 
   }
 
+  /**
+   * Adds a capture disk for which this transmitter is the captured transmitter.
+   * Not thread-safe; concurrent callers must be working on different
+   * transmitters, as in {@link Main#generateCaptureDisks}.
+   * 
+   * @param disk
+   *          the capture disk to add.
+   */
   public void addDisk(final CaptureDisk disk) {
     this.disks.add(disk);
+    ++this.numDisks;
+  }
+
+  /**
+   * Counts capture disks of this transmitter without storing them, for runs
+   * that score from the transmitter pairs (see {@link PairFreeScorer}).
+   * 
+   * @param count
+   *          the number of disks to count.
+   */
+  void addUnstoredDisks(final int count) {
+    this.numDisks += count;
   }
 
   public Collection<CaptureDisk> getDisks() {
     return this.disks;
   }
 
+  /**
+   * Records that one of this transmitter's capture disks is covered. Each disk
+   * must only be added once, as {@link CaptureMatrix#capture} does.
+   * 
+   * @param disk
+   *          the covered capture disk.
+   */
   public void addCoveredDisk(final CaptureDisk disk) {
-    this.coveredDisks.add(disk);
+    ++this.numCoveredDisks;
   }
 
   public float getCaptureRatio() {
     
-    return this.disks.isEmpty() ? 0 : ((float) this.coveredDisks.size()) / this.disks.size();
+    return this.numDisks == 0 ? 0 : ((float) this.numCoveredDisks) / this.numDisks;
   }
 
 }
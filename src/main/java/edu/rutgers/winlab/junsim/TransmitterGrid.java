@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2012 Robert Moore and Rutgers University
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package edu.rutgers.winlab.junsim;
+
+import java.util.Collection;
+
+/**
+ * Uniform grid over a fixed set of transmitters. Transmitters are bucketed into
+ * square cells so that all transmitters within some distance of a point can be
+ * found by visiting only the neighboring cells, rather than every transmitter.
+ * <p>
+ * The cell contents are stored in a single array sorted by cell, with an offset
+ * array marking where each cell starts (a counting sort). The grid is immutable
+ * once built, so it is safe to query from multiple threads.
+ * </p>
+ *
+ * @author Robert Moore
+ */
+public class TransmitterGrid {
+
+  /**
+   * Upper bound on the number of cells, relative to the number of transmitters.
+   * Keeps tiny cell sizes from allocating enormous, mostly-empty grids.
+   */
+  private static final int MAX_CELLS_PER_TRANSMITTER = 4;
+
+  /**
+   * Transmitters, sorted by cell.
+   */
+  private final Transmitter[] contents;
+
+  /**
+   * X-coordinates of the transmitters in {@code contents}.
+   */
+  private final float[] xs;
+
+  /**
+   * Y-coordinates of the transmitters in {@code contents}.
+   */
+  private final float[] ys;
+
+  /**
+   * Start offset of each cell within {@code contents}. Cell {@code i} occupies
+   * {@code [cellStart[i], cellStart[i+1])}.
+   */
+  private final int[] cellStart;
+
+  /**
+   * Minimum x-coordinate covered by the grid.
+   */
+  private final float minX;
+
+  /**
+   * Minimum y-coordinate covered by the grid.
+   */
+  private final float minY;
+
+  /**
+   * Width and height of each cell.
+   */
+  private final float cellSize;
+
+  /**
+   * Number of columns in the grid.
+   */
+  private final int columns;
+
+  /**
+   * Number of rows in the grid.
+   */
+  private final int rows;
+
+  /**
+   * Creates a new grid over the provided transmitters.
+   *
+   * @param transmitters
+   *          the transmitters to index.
+   * @param cellSize
+   *          the preferred width/height of each cell. The grid may use larger
+   *          cells if this value would produce an excessive number of cells.
+   */
+  public TransmitterGrid(final Collection<Transmitter> transmitters,
+      final float cellSize) {
+    super();
+    this.contents = new Transmitter[transmitters.size()];
+    this.xs = new float[transmitters.size()];
+    this.ys = new float[transmitters.size()];
+
+    float lowX = Float.MAX_VALUE;
+    float lowY = Float.MAX_VALUE;
+    float highX = -Float.MAX_VALUE;
+    float highY = -Float.MAX_VALUE;
+    for (final Transmitter t : transmitters) {
+      lowX = Math.min(lowX, t.x);
+      lowY = Math.min(lowY, t.y);
+      highX = Math.max(highX, t.x);
+      highY = Math.max(highY, t.y);
+    }
+    if (transmitters.isEmpty()) {
+      lowX = lowY = highX = highY = 0;
+    }
+    this.minX = lowX;
+    this.minY = lowY;
+
+    final float width = Math.max(highX - lowX, Float.MIN_VALUE);
+    final float height = Math.max(highY - lowY, Float.MIN_VALUE);
+    float size = cellSize > 0 ? cellSize : Math.max(width, height);
+    final long maxCells = Math.max(1, (long) transmitters.size()
+        * MAX_CELLS_PER_TRANSMITTER);
+    while (((long) (width / size) + 1) * ((long) (height / size) + 1) > maxCells) {
+      size *= 2;
+    }
+    this.cellSize = size;
+    this.columns = (int) (width / size) + 1;
+    this.rows = (int) (height / size) + 1;
+
+    // Counting sort of the transmitters into their cells
+    this.cellStart = new int[this.columns * this.rows + 1];
+    for (final Transmitter t : transmitters) {
+      ++this.cellStart[this.getCell(t.x, t.y) + 1];
+    }
+    for (int i = 1; i < this.cellStart.length; ++i) {
+      this.cellStart[i] += this.cellStart[i - 1];
+    }
+    final int[] fill = new int[this.columns * this.rows];
+    for (final Transmitter t : transmitters) {
+      final int cell = this.getCell(t.x, t.y);
+      final int slot = this.cellStart[cell] + fill[cell]++;
+      this.contents[slot] = t;
+      this.xs[slot] = t.x;
+      this.ys[slot] = t.y;
+    }
+  }
+
+  /**
+   * Returns the column containing the x-coordinate, clamped to the grid.
+   *
+   * @param x
+   *          the x-coordinate.
+   * @return the column index.
+   */
+  public int getColumn(final double x) {
+    final int col = (int) Math.floor((x - this.minX) / this.cellSize);
+    return col < 0 ? 0 : (col >= this.columns ? this.columns - 1 : col);
+  }
+
+  /**
+   * Returns the row containing the y-coordinate, clamped to the grid.
+   *
+   * @param y
+   *          the y-coordinate.
+   * @return the row index.
+   */
+  public int getRow(final double y) {
+    final int row = (int) Math.floor((y - this.minY) / this.cellSize);
+    return row < 0 ? 0 : (row >= this.rows ? this.rows - 1 : row);
+  }
+
+  private int getCell(final double x, final double y) {
+    return this.getRow(y) * this.columns + this.getColumn(x);
+  }
+
+  /**
+   * Gets all transmitters that may lie within {@code radius} of the point. Every
+   * transmitter within the radius is returned, but some transmitters farther
+   * away may be returned as well.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param radius
+   *          the search radius.
+   * @param neighbors
+   *          collection to add the nearby transmitters to.
+   */
+  public void getNeighbors(final double x, final double y,
+      final double radius, final Collection<Transmitter> neighbors) {
+    final int lowCol = this.getColumn(x - radius);
+    final int highCol = this.getColumn(x + radius);
+    final int lowRow = this.getRow(y - radius);
+    final int highRow = this.getRow(y + radius);
+    for (int row = lowRow; row <= highRow; ++row) {
+      final int start = this.cellStart[row * this.columns + lowCol];
+      final int end = this.cellStart[row * this.columns + highCol + 1];
+      for (int i = start; i < end; ++i) {
+        neighbors.add(this.contents[i]);
+      }
+    }
+  }
+
+  /**
+   * Determines whether any transmitter is within {@code radius} of the point.
+   * Same as {@link Geometry#inRange} over all of the transmitters.
+   *
+   * @param x
+   *          the x-coordinate of the point.
+   * @param y
+   *          the y-coordinate of the point.
+   * @param radius
+   *          the search radius.
+   * @return {@code true} if any transmitter is closer than {@code radius}.
+   */
+  public boolean anyWithin(final double x, final double y, final double radius) {
+    final double radiusSq = radius * radius;
+    final int lowCol = this.getColumn(x - radius);
+    final int highCol = this.getColumn(x + radius);
+    final int lowRow = this.getRow(y - radius);
+    final int highRow = this.getRow(y + radius);
+    for (int row = lowRow; row <= highRow; ++row) {
+      final int start = this.cellStart[row * this.columns + lowCol];
+      final int end = this.cellStart[row * this.columns + highCol + 1];
+      for (int i = start; i < end; ++i) {
+        if (Geometry.distanceSq(x, y, this.xs[i], this.ys[i]) < radiusSq) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The number of transmitters in the grid.
+   *
+   * @return the number of transmitters indexed.
+   */
+  public int size() {
+    return this.contents.length;
+  }
+}